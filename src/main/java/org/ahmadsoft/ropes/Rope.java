@@ -25,11 +25,28 @@ package org.ahmadsoft.ropes;
 import org.ahmadsoft.ropes.impl.AbstractRope;
 import org.ahmadsoft.ropes.impl.FlatStringRope;
 import org.ahmadsoft.ropes.impl.FlatCharSequenceRope;
+import org.ahmadsoft.ropes.impl.FlatLatin1Rope;
+import org.ahmadsoft.ropes.impl.FlatByteBufferRope;
+import org.ahmadsoft.ropes.impl.FlatCompressedRope;
+import org.ahmadsoft.ropes.impl.RopeEncoder;
+import org.ahmadsoft.ropes.impl.RopeSegments;
+import org.ahmadsoft.ropes.impl.SharedSerialization;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Serializable;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
@@ -91,10 +108,26 @@ import java.util.regex.Pattern;
 		return text.isEmpty() ? EMPTY : new FlatStringRope(text);
 	}
 
+	/**
+	 * Construct a rope from a range of ISO-8859-1 (Latin-1) bytes, one
+	 * per character. The bytes are copied into a compact leaf.
+	 *
+	 * @param bytes the Latin-1 bytes
+	 * @param offset the offset of the first byte
+	 * @param length the number of bytes
+	 * @return a corresponding rope
+	 */
+	@NotNull
+	static Rope ofLatin1(byte[] bytes, int offset, int length) {
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		return length == 0 ? EMPTY : new FlatLatin1Rope(bytes, offset, length);
+	}
+
 	/**
 	 * Construct a rope from the specified character sequence.
 	 * <p>
-	 * Does not need to copy for strings or ropes.<br/>
+	 * Does not need to copy for strings or ropes. Other sequences whose
+	 * content fits in Latin-1 are copied into a compact leaf.<br/>
 	 * Prefer this to {@link #viewOf(CharSequence)} for safety reasons.
 	 * </p>
 	 *
@@ -105,7 +138,99 @@ import java.util.regex.Pattern;
 	static Rope copyOf(CharSequence seq) {
 		if (seq.isEmpty()) return Rope.EMPTY;
 		else if (seq instanceof Rope other) return other;
-		else return new FlatStringRope(seq.toString());
+		else if (seq instanceof String str) return new FlatStringRope(str);
+		else {
+			final Rope latin1 = FlatLatin1Rope.tryCopyOf(seq);
+			return latin1 != null ? latin1 : new FlatStringRope(seq.toString());
+		}
+	}
+
+	/**
+	 * Read all remaining characters from a reader into a balanced rope.
+	 * The characters are read in chunks straight into the leaves, so the
+	 * content is never held as a single string. The reader is not closed.
+	 *
+	 * @param in the reader
+	 * @return a rope holding the characters read
+	 * @throws IOException if reading fails
+	 * @see RopeBuilder#readFrom(Reader) to choose the leaf length
+	 */
+	@NotNull
+	static Rope read(@NotNull Reader in) throws IOException {
+		return new RopeBuilder().readFrom(in).build();
+	}
+
+	/**
+	 * Read all remaining bytes from a channel into a balanced rope,
+	 * decoding them with the specified charset. The bytes are decoded in
+	 * chunks straight into the leaves, so the content is never held as a
+	 * single string. The channel is not closed.
+	 *
+	 * @param in the channel
+	 * @param charset the charset of the bytes
+	 * @return a rope holding the decoded characters
+	 * @throws IOException if reading fails
+	 * @see RopeBuilder#readFrom(ReadableByteChannel, Charset) to choose
+	 * the leaf length
+	 */
+	@NotNull
+	static Rope read(@NotNull ReadableByteChannel in, @NotNull Charset charset) throws IOException {
+		return new RopeBuilder().readFrom(in, charset).build();
+	}
+
+	/**
+	 * Construct a rope over a memory-mapped file. The file is not read:
+	 * creating the rope takes constant time, and pages are loaded as
+	 * characters are accessed. Edits build new ropes over the mapped
+	 * data without copying it.
+	 * <p>
+	 * Only fixed-width charsets are supported: US-ASCII and ISO-8859-1,
+	 * mapped one byte per character, and UTF-16, UTF-16BE and UTF-16LE,
+	 * mapped two bytes per character. For UTF-16, a byte order mark
+	 * selects the byte order and is skipped. Bytes outside ASCII in a
+	 * US-ASCII file are read as U+FFFD, just as
+	 * {@link #read(ReadableByteChannel, Charset)} replaces them. The file
+	 * must not be modified while the rope is in use.
+	 * </p>
+	 *
+	 * @param file the file
+	 * @param charset the charset of the file
+	 * @return a rope over the mapped file
+	 * @throws IOException if the file cannot be mapped
+	 * @throws IllegalArgumentException if the charset is not supported,
+	 * or the file holds too many characters for a rope
+	 */
+	@NotNull
+	static Rope map(@NotNull Path file, @NotNull Charset charset) throws IOException {
+		return FlatByteBufferRope.map(file, charset);
+	}
+
+	/**
+	 * Write a batch of ropes to an object stream as a graph of their
+	 * nodes. Each node is written once, however many of the ropes share
+	 * it, so a batch of versions of a document takes space in proportion
+	 * to their distinct content.
+	 *
+	 * @param out the output
+	 * @param ropes the ropes to write
+	 * @throws IOException if writing fails
+	 * @see #readShared(ObjectInput)
+	 */
+	static void writeShared(ObjectOutput out, List<? extends Rope> ropes) throws IOException {
+		SharedSerialization.write(out, ropes);
+	}
+
+	/**
+	 * Read a batch of ropes written by {@link #writeShared(ObjectOutput, List)}.
+	 * The ropes share nodes just as the written ropes did.
+	 *
+	 * @param in the input
+	 * @return the ropes, in the order written
+	 * @throws IOException if reading fails or the input is corrupt
+	 */
+	@NotNull
+	static List<Rope> readShared(ObjectInput in) throws IOException {
+		return SharedSerialization.read(in);
 	}
 
 	/**
@@ -185,6 +310,23 @@ import java.util.regex.Pattern;
 	@NotNull
     Rope delete(int start, int end);
 
+    /**
+     * Returns a new rope with a batch of edits applied. Each edit deletes
+     * a range and inserts text in its place; offsets refer to this rope,
+     * not to the result of earlier edits. The rope is rebuilt in a single
+     * walk that reuses every subtree no edit touches, which is cheaper
+     * than applying the edits one at a time.
+     *
+     * @param edits the edits, sorted by offset and not overlapping.
+     * @return a new rope with the edits applied.
+     * @throws IllegalArgumentException if the edits are out of order or
+     * overlap.
+     * @throws IndexOutOfBoundsException if an edit extends past the end
+     * of this rope.
+     */
+	@NotNull
+    Rope applyEdits(List<RopeEdit> edits);
+
 	/**
 	 * Returns the index within this rope of the first occurrence of the
 	 * specified character. If a character with value <code>ch</code> occurs
@@ -366,6 +508,46 @@ import java.util.regex.Pattern;
 	@NotNull
     public Rope rebalance();
 
+    /**
+     * Rebalances the current rope, additionally packing runs of adjacent
+     * short leaves into flat leaves of up to the specified length. This
+     * reduces the number of nodes in a rope built from many small edits,
+     * at the cost of copying the packed characters.
+     *
+     * @param targetLeafLength the maximum length of a packed leaf.
+     * @return a rebalanced rope.
+     * @throws IllegalArgumentException if <code>targetLeafLength</code>
+     * is not positive.
+     * @see #rebalance()
+     */
+	@NotNull
+    public Rope rebalance(int targetLeafLength);
+
+    /**
+     * Returns a transient (mutable) copy of this rope, for applying a
+     * batch of edits without copying the tree on every edit. This rope
+     * is not modified.
+     * @return a transient copy of this rope.
+     * @see TransientRope#persistent()
+     */
+	@NotNull
+    default TransientRope toTransient() {
+		return new TransientRope(this);
+	}
+
+    /**
+     * Returns a copy of this rope with its long leaves stored compressed,
+     * trading the CPU time of decompressing on access for heap. Intended
+     * for ropes that are kept but rarely read; each thread caches the few
+     * leaves it decompressed most recently. Leaves that do not compress
+     * well, and memory-mapped leaves, are kept as they are.
+     * @return a compressed copy of this rope.
+     */
+	@NotNull
+    default Rope compress() {
+		return FlatCompressedRope.compress(this);
+	}
+
     /**
      * Reverses this rope.
      * @return a reversed copy of this rope.
@@ -416,6 +598,28 @@ import java.util.regex.Pattern;
 	@NotNull
 	Rope trim();
 
+    /**
+     * Copies characters from this rope into the destination character
+     * array. The first character to be copied is at index
+     * <code>srcBegin</code>; the last character to be copied is at
+     * index <code>srcEnd-1</code>. The characters are copied into the
+     * subarray of <code>dst</code> starting at index <code>dstBegin</code>.
+     * <p>
+     * This is the preferred way to extract a range of a rope in bulk,
+     * as each underlying leaf is copied directly.
+     * </p>
+     * @param srcBegin index of the first character in the rope to copy.
+     * @param srcEnd index after the last character in the rope to copy.
+     * @param dst the destination array.
+     * @param dstBegin the start offset in the destination array.
+     * @throws IndexOutOfBoundsException if the source range is not
+     * within this rope, or the destination range is not within
+     * <code>dst</code>.
+     * @see String#getChars(int, int, char[], int)
+     */
+    //@ requires srcBegin > -1 && srcBegin <= srcEnd && srcEnd <= length();
+    void getChars(int srcBegin, int srcEnd, @NotNull char[] dst, int dstBegin);
+
     /**
      * Write this rope to a <code>Writer</code>.
      * @param out the writer object.
@@ -431,7 +635,69 @@ import java.util.regex.Pattern;
      * @throws IOException if an IO error occurs
      */
     public void write(Writer out, int offset, int length) throws IOException;
-    
+
+    /**
+     * Write this rope to an <code>OutputStream</code>, encoded with the
+     * specified charset. No intermediate string is built; malformed and
+     * unmappable characters are replaced. The stream is neither flushed
+     * nor closed.
+     * @param out the output stream.
+     * @param charset the charset to encode with.
+     * @throws IOException if an IO error occurs
+     */
+    default void write(@NotNull OutputStream out, @NotNull Charset charset) throws IOException {
+		RopeEncoder.write(this, out, charset);
+	}
+
+    /**
+     * Write this rope to a blocking <code>WritableByteChannel</code>,
+     * encoded with the specified charset. No intermediate string is
+     * built; malformed and unmappable characters are replaced. The
+     * channel is not closed.
+     * @param out the channel.
+     * @param charset the charset to encode with.
+     * @throws IOException if an IO error occurs
+     */
+    default void write(@NotNull WritableByteChannel out, @NotNull Charset charset) throws IOException {
+		RopeEncoder.write(this, out, charset);
+	}
+
+    /**
+     * Returns this rope as a list of read-only character buffers, one per
+     * leaf range. The buffers share the storage of the leaves wherever
+     * possible; no leaf is copied into a larger buffer.
+     * @return the buffers, in order.
+     */
+	@NotNull
+    default List<CharBuffer> charSegments() {
+		return RopeSegments.chars(this);
+	}
+
+    /**
+     * Returns this rope encoded with the specified charset, as a list of
+     * read-only byte buffers suitable for a gathering write such as
+     * <code>GatheringByteChannel.write(ByteBuffer[])</code>. Latin-1
+     * leaves that the charset encodes byte for byte are shared rather
+     * than copied; the remaining text is encoded into new buffers.
+     * Malformed and unmappable characters are replaced.
+     * @param charset the charset to encode with.
+     * @return the buffers, in order.
+     */
+	@NotNull
+    default List<ByteBuffer> byteSegments(@NotNull Charset charset) {
+		return RopeSegments.bytes(this, charset);
+	}
+
+    /**
+     * Returns a reader over the characters of this rope, which reads
+     * directly from the leaves without flattening the rope.
+     * @return a reader over this rope.
+     */
+	@NotNull
+    default RopeReader reader() {
+		return new RopeReader(this);
+	}
+
     /**
      * Increase the length of this rope to the specified length by prepending 
      * spaces to this rope. If the specified length is less than or equal to 
@@ -0,0 +1,305 @@
+package org.ahmadsoft.ropes;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Objects;
+
+import org.ahmadsoft.ropes.impl.ConcatenationRope;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A mutable builder for ropes, for assembling large ropes from many
+ * small pieces.
+ * <p>
+ * Characters are buffered into fixed-size chunks, each of which becomes
+ * a single leaf, so building costs about as much as appending to a
+ * <code>StringBuilder</code>. Completed chunks are combined into a
+ * perfectly balanced tree. Ropes and long strings are spliced in as
+ * they are, without copying their characters. Buffered characters
+ * never split a surrogate pair between two leaves.
+ * <p>
+ * The builder may be used further after {@link #build()}; ropes already
+ * built are not affected. A builder must not be shared between threads.
+ */
+public final class RopeBuilder implements Appendable {
+
+	/**
+	 * The default length of the leaves produced from buffered characters.
+	 */
+	private static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	/**
+	 * The size of the byte buffer used when decoding a channel.
+	 */
+	private static final int BYTE_BUFFER_SIZE = 8192;
+
+	private final char[] chunk;
+	private int chunkLength;
+	/**
+	 * Completed chunks that have not yet been joined onto the prefix.
+	 */
+	private final ArrayList<Rope> leaves = new ArrayList<>();
+	private Rope prefix = Rope.EMPTY;
+	private int length;
+
+	/**
+	 * Constructs an empty builder.
+	 */
+	public RopeBuilder() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Constructs an empty builder producing leaves of the specified
+	 * length.
+	 * @param chunkSize the length of the leaves built from buffered
+	 * characters.
+	 * @throws IllegalArgumentException if <code>chunkSize</code> is less
+	 * than two, the length of a surrogate pair, which is kept within
+	 * one leaf.
+	 */
+	public RopeBuilder(final int chunkSize) {
+		if (chunkSize < 2)
+			throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+		this.chunk = new char[chunkSize];
+	}
+
+	/**
+	 * Appends the specified character.
+	 * @param c the character.
+	 * @return this builder.
+	 */
+	@Override
+	public RopeBuilder append(final char c) {
+		if (this.chunkLength == this.chunk.length)
+			this.flushFullChunk();
+		this.grow(1);
+		this.chunk[this.chunkLength++] = c;
+		return this;
+	}
+
+	/**
+	 * Appends the specified character sequence. Ropes and strings of at
+	 * least a chunk's length are spliced in without copying.
+	 * @param csq the character sequence, or <code>null</code> to append
+	 * <code>"null"</code>.
+	 * @return this builder.
+	 */
+	@Override
+	public RopeBuilder append(final CharSequence csq) {
+		if (csq == null)
+			return this.append("null");
+		if (csq instanceof Rope rope)
+			return this.append(rope);
+		if (csq instanceof String string && string.length() >= this.chunk.length)
+			return this.append(Rope.of(string));
+		return this.append(csq, 0, csq.length());
+	}
+
+	/**
+	 * Appends a range of the specified character sequence.
+	 * @param csq the character sequence, or <code>null</code> to append
+	 * a range of <code>"null"</code>.
+	 * @param start the start index, inclusive.
+	 * @param end the end index, exclusive.
+	 * @return this builder.
+	 */
+	@Override
+	public RopeBuilder append(final CharSequence csq, int start, final int end) {
+		if (csq == null)
+			return this.append("null", start, end);
+		Objects.checkFromToIndex(start, end, csq.length());
+		if (csq instanceof Rope rope)
+			return this.append(rope.subSequence(start, end));
+		while (start < end) {
+			if (this.chunkLength == this.chunk.length)
+				this.flushFullChunk();
+			final int n = Math.min(end - start, this.chunk.length - this.chunkLength);
+			this.grow(n);
+			if (csq instanceof String string) {
+				string.getChars(start, start + n, this.chunk, this.chunkLength);
+			} else if (csq instanceof StringBuilder builder) {
+				builder.getChars(start, start + n, this.chunk, this.chunkLength);
+			} else if (csq instanceof StringBuffer buffer) {
+				buffer.getChars(start, start + n, this.chunk, this.chunkLength);
+			} else {
+				for (int j=0; j<n; ++j)
+					this.chunk[this.chunkLength + j] = csq.charAt(start + j);
+			}
+			this.chunkLength += n;
+			start += n;
+		}
+		return this;
+	}
+
+	/**
+	 * Appends the specified rope. Ropes that fit in the current chunk are
+	 * copied into it; longer ropes are spliced in as subtrees.
+	 * @param rope the rope.
+	 * @return this builder.
+	 */
+	public RopeBuilder append(final Rope rope) {
+		final int ropeLength = rope.length();
+		this.grow(ropeLength);
+		if (ropeLength <= this.chunk.length - this.chunkLength) {
+			rope.getChars(0, ropeLength, this.chunk, this.chunkLength);
+			this.chunkLength += ropeLength;
+		} else {
+			this.flushChunk();
+			this.flushLeaves();
+			this.prefix = this.prefix.append(rope);
+		}
+		return this;
+	}
+
+	/**
+	 * Appends all remaining characters from a reader, reading straight
+	 * into the chunk buffer. The reader is not closed.
+	 * @param in the reader.
+	 * @return this builder.
+	 * @throws IOException if reading fails.
+	 */
+	public RopeBuilder readFrom(final Reader in) throws IOException {
+		while (true) {
+			if (this.chunkLength == this.chunk.length)
+				this.flushFullChunk();
+			final int n = in.read(this.chunk, this.chunkLength, this.chunk.length - this.chunkLength);
+			if (n < 0)
+				return this;
+			this.grow(n);
+			this.chunkLength += n;
+		}
+	}
+
+	/**
+	 * Appends all remaining bytes from a channel, decoded with the
+	 * specified charset straight into the chunk buffer. Malformed and
+	 * unmappable input is replaced, as by {@link java.io.InputStreamReader}.
+	 * The channel is not closed.
+	 * @param in the channel.
+	 * @param charset the charset of the bytes.
+	 * @return this builder.
+	 * @throws IOException if reading fails.
+	 */
+	public RopeBuilder readFrom(final ReadableByteChannel in, final Charset charset) throws IOException {
+		final CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		final ByteBuffer bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+		boolean endOfInput = false;
+		while (!endOfInput) {
+			endOfInput = in.read(bytes) < 0;
+			bytes.flip();
+			this.decode(decoder, bytes, endOfInput);
+			bytes.compact();
+		}
+		this.decode(decoder, null, true);
+		return this;
+	}
+
+	/**
+	 * Decode bytes into the chunk buffer until the input is exhausted,
+	 * or flush the decoder if <code>bytes</code> is <code>null</code>.
+	 */
+	private void decode(final CharsetDecoder decoder, final ByteBuffer bytes, final boolean endOfInput)
+			throws IOException {
+		while (true) {
+			// leave room for a surrogate pair, which is decoded as a unit
+			if (this.chunk.length - this.chunkLength < 2)
+				this.flushChunk();
+			final CharBuffer out = CharBuffer.wrap(this.chunk, this.chunkLength, this.chunk.length - this.chunkLength);
+			final CoderResult result = bytes == null ? decoder.flush(out) : decoder.decode(bytes, out, endOfInput);
+			final int n = out.position() - this.chunkLength;
+			this.grow(n);
+			this.chunkLength += n;
+			if (result.isUnderflow())
+				return;
+			if (!result.isOverflow())
+				result.throwException();
+		}
+	}
+
+	private void grow(final int n) {
+		if ((long) this.length + n > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Rope length would overflow length field.");
+		this.length += n;
+	}
+
+	/**
+	 * Returns the number of characters appended so far.
+	 * @return the length of the rope being built.
+	 */
+	public int length() {
+		return this.length;
+	}
+
+	/**
+	 * Returns a balanced rope holding the characters appended so far.
+	 * @return the rope.
+	 */
+	@NotNull
+	public Rope build() {
+		this.flushChunk();
+		this.flushLeaves();
+		return this.prefix;
+	}
+
+	private void flushChunk() {
+		if (this.chunkLength > 0) {
+			this.leaves.add(Rope.of(new String(this.chunk, 0, this.chunkLength)));
+			this.chunkLength = 0;
+		}
+	}
+
+	/**
+	 * Flush a full chunk, but carry a high surrogate at its end over into
+	 * the next chunk, so that it stays with the low surrogate after it.
+	 */
+	private void flushFullChunk() {
+		final char last = this.chunk[this.chunkLength - 1];
+		if (!Character.isHighSurrogate(last)) {
+			this.flushChunk();
+			return;
+		}
+		this.leaves.add(Rope.of(new String(this.chunk, 0, this.chunkLength - 1)));
+		this.chunk[0] = last;
+		this.chunkLength = 1;
+	}
+
+	private void flushLeaves() {
+		if (!this.leaves.isEmpty()) {
+			this.prefix = this.prefix.append(merge(this.leaves, 0, this.leaves.size()));
+			this.leaves.clear();
+		}
+	}
+
+	private static Rope merge(final ArrayList<Rope> leaves, final int start, final int end) {
+		final int range = end - start;
+		if (range == 1)
+			return leaves.get(start);
+		final int middle = start + (range / 2);
+		return new ConcatenationRope(merge(leaves, start, middle), merge(leaves, middle, end));
+	}
+
+	/**
+	 * Returns the characters appended so far, without flushing the
+	 * buffered characters, so the leaves built later are unaffected.
+	 * @return the characters appended so far.
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder result = new StringBuilder(this.length);
+		result.append(this.prefix);
+		for (final Rope leaf : this.leaves)
+			result.append(leaf);
+		return result.append(this.chunk, 0, this.chunkLength).toString();
+	}
+}
@@ -0,0 +1,65 @@
+package org.ahmadsoft.ropes;
+
+import java.util.Objects;
+
+/**
+ * A single edit for {@link Rope#applyEdits(java.util.List)}: delete
+ * <code>deleteLength</code> characters at <code>offset</code>, then
+ * insert <code>insertText</code> there. Offsets always refer to the
+ * rope the edits are applied to, not to the result of earlier edits.
+ *
+ * @param offset the offset of the edit.
+ * @param deleteLength the number of characters to delete.
+ * @param insertText the text to insert.
+ */
+public record RopeEdit(int offset, int deleteLength, CharSequence insertText) {
+
+	/**
+	 * Constructs an edit.
+	 * @param offset the offset of the edit.
+	 * @param deleteLength the number of characters to delete.
+	 * @param insertText the text to insert.
+	 * @throws IllegalArgumentException if the offset or the delete
+	 * length is negative.
+	 * @throws NullPointerException if <code>insertText</code> is
+	 * <code>null</code>.
+	 */
+	public RopeEdit {
+		if (offset < 0)
+			throw new IllegalArgumentException("Illegal edit offset: " + offset);
+		if (deleteLength < 0)
+			throw new IllegalArgumentException("Illegal delete length: " + deleteLength);
+		Objects.requireNonNull(insertText);
+	}
+
+	/**
+	 * Returns an edit that inserts text at the specified offset.
+	 * @param offset the offset.
+	 * @param text the text to insert.
+	 * @return the edit.
+	 */
+	public static RopeEdit insert(final int offset, final CharSequence text) {
+		return new RopeEdit(offset, 0, text);
+	}
+
+	/**
+	 * Returns an edit that deletes the specified range.
+	 * @param start the start index, inclusive.
+	 * @param end the end index, exclusive.
+	 * @return the edit.
+	 */
+	public static RopeEdit delete(final int start, final int end) {
+		return new RopeEdit(start, end - start, "");
+	}
+
+	/**
+	 * Returns an edit that replaces the specified range with text.
+	 * @param start the start index, inclusive.
+	 * @param end the end index, exclusive.
+	 * @param text the replacement text.
+	 * @return the edit.
+	 */
+	public static RopeEdit replace(final int start, final int end, final CharSequence text) {
+		return new RopeEdit(start, end - start, text);
+	}
+}
@@ -0,0 +1,157 @@
+package org.ahmadsoft.ropes;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Objects;
+
+import org.ahmadsoft.ropes.impl.RopeCursor;
+import org.ahmadsoft.ropes.impl.RopeSegments;
+
+/**
+ * A reader over the characters of a rope, for streaming a rope into a
+ * parser without flattening it.
+ * <p>
+ * Reads copy straight out of the leaves, keeping a finger on the
+ * current leaf so that sequential reads do not descend the tree again.
+ * {@link #skip(long)} and {@link #reset()} only move the position, and
+ * the next read finds its leaf in O(log n). Marks are supported with no
+ * read-ahead limit.
+ * <p>
+ * Unlike most readers, a rope reader is not synchronized and must not
+ * be shared between threads.
+ *
+ * @see Rope#reader()
+ */
+public final class RopeReader extends Reader {
+
+	private final Rope rope;
+	private final RopeCursor cursor;
+	private int position;
+	private int mark;
+	private boolean closed;
+
+	/**
+	 * Constructs a reader over the specified rope.
+	 * @param rope the rope to read.
+	 */
+	public RopeReader(final Rope rope) {
+		this.rope = Objects.requireNonNull(rope);
+		this.cursor = new RopeCursor(rope);
+	}
+
+	@Override
+	public int read() throws IOException {
+		this.ensureOpen();
+		if (this.position == this.rope.length())
+			return -1;
+		return this.cursor.charAt(this.position++);
+	}
+
+	@Override
+	public int read(final char[] cbuf, final int off, final int len) throws IOException {
+		this.ensureOpen();
+		Objects.checkFromIndexSize(off, len, cbuf.length);
+		if (len == 0)
+			return 0;
+		final int remaining = this.rope.length() - this.position;
+		if (remaining == 0)
+			return -1;
+		final int n = Math.min(len, remaining);
+		final int end = this.position + n;
+		int written = off;
+		while (this.position < end) {
+			this.cursor.seek(this.position);
+			final Rope leaf = this.cursor.leaf();
+			final int leafOffset = this.position - this.cursor.leafStart();
+			final int count = Math.min(leaf.length() - leafOffset, end - this.position);
+			leaf.getChars(leafOffset, leafOffset + count, cbuf, written);
+			written += count;
+			this.position += count;
+		}
+		return n;
+	}
+
+	/**
+	 * Reads the next run of characters within a single leaf, without
+	 * copying them.
+	 * @param maxLength the maximum number of characters to read.
+	 * @return a read-only buffer over the characters read, or
+	 * <code>null</code> at the end of the rope.
+	 * @throws IOException if the reader is closed.
+	 */
+	public CharBuffer readChunk(final int maxLength) throws IOException {
+		this.ensureOpen();
+		if (maxLength <= 0)
+			throw new IllegalArgumentException("Illegal chunk length: " + maxLength);
+		if (this.position == this.rope.length())
+			return null;
+		this.cursor.seek(this.position);
+		final Rope leaf = this.cursor.leaf();
+		final int leafOffset = this.position - this.cursor.leafStart();
+		final int count = Math.min(leaf.length() - leafOffset, maxLength);
+		this.position += count;
+		return RopeSegments.leafChars(leaf, leafOffset, leafOffset + count);
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		this.ensureOpen();
+		if (n < 0)
+			throw new IllegalArgumentException("skip value is negative");
+		final int skipped = (int) Math.min(n, this.rope.length() - this.position);
+		this.position += skipped;
+		return skipped;
+	}
+
+	@Override
+	public long transferTo(final Writer out) throws IOException {
+		this.ensureOpen();
+		final int remaining = this.rope.length() - this.position;
+		this.rope.write(out, this.position, remaining);
+		this.position += remaining;
+		return remaining;
+	}
+
+	@Override
+	public boolean ready() throws IOException {
+		this.ensureOpen();
+		return true;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	/**
+	 * Marks the present position. The read-ahead limit is ignored, since
+	 * the whole rope remains available.
+	 * @param readAheadLimit ignored.
+	 * @throws IOException if the reader is closed.
+	 */
+	@Override
+	public void mark(final int readAheadLimit) throws IOException {
+		this.ensureOpen();
+		if (readAheadLimit < 0)
+			throw new IllegalArgumentException("Read-ahead limit < 0");
+		this.mark = this.position;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		this.ensureOpen();
+		this.position = this.mark;
+	}
+
+	@Override
+	public void close() {
+		this.closed = true;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (this.closed)
+			throw new IOException("Stream closed");
+	}
+}
@@ -0,0 +1,424 @@
+package org.ahmadsoft.ropes;
+
+import java.util.Objects;
+
+import org.ahmadsoft.ropes.impl.AbstractRope;
+import org.ahmadsoft.ropes.impl.ConcatenationRope;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A mutable, single-owner form of a rope, for applying a batch of edits
+ * cheaply.
+ * <p>
+ * Persistent edits copy the path from the root to every node they
+ * touch. A transient rope copies a node of the original rope only the
+ * first time an edit reaches it; from then on it owns the copy and
+ * mutates it in place. Short text is kept in owned, fixed-capacity
+ * character buffers, so repeated edits in the same region write into
+ * the same buffer. The tree is kept height-balanced throughout.
+ * <p>
+ * {@link #persistent()} freezes the result back into an immutable rope,
+ * sharing every subtree the edits did not touch, after which the
+ * transient rope can no longer be used. The original rope is never
+ * modified. A transient rope must not be shared between threads.
+ *
+ * @see Rope#toTransient()
+ */
+public final class TransientRope {
+
+	/**
+	 * The capacity of an owned character buffer.
+	 */
+	private static final int LEAF_CAPACITY = 1024;
+
+	private Node root;
+	private boolean persisted;
+
+	/**
+	 * Constructs a transient rope holding the contents of the specified
+	 * rope.
+	 * @param rope the rope to edit.
+	 */
+	public TransientRope(final Rope rope) {
+		Rope r = Objects.requireNonNull(rope);
+		// degenerate trees are rebalanced first, so edits stay logarithmic
+		final int depth = ((AbstractRope) r).depth();
+		if (depth < 0 || depth > 2 * (32 - Integer.numberOfLeadingZeros(r.length())))
+			r = r.rebalance();
+		this.root = r.isEmpty() ? null : new Shared(r);
+	}
+
+	/**
+	 * Returns the length of this rope.
+	 * @return the length of this rope.
+	 */
+	public int length() {
+		this.ensureEditable();
+		return this.root == null ? 0 : this.root.length();
+	}
+
+	/**
+	 * Returns the character at the specified index.
+	 * @param index the index.
+	 * @return the character at the specified index.
+	 */
+	public char charAt(int index) {
+		Objects.checkIndex(index, this.length());
+		Node node = this.root;
+		while (true) {
+			if (node instanceof Shared shared)
+				return shared.rope.charAt(index);
+			if (node instanceof Buffer buffer)
+				return buffer.chars[index];
+			final Branch branch = (Branch) node;
+			final int leftLength = branch.left.length();
+			if (index < leftLength) {
+				node = branch.left;
+			} else {
+				index -= leftLength;
+				node = branch.right;
+			}
+		}
+	}
+
+	/**
+	 * Appends the specified character sequence.
+	 * @param suffix the character sequence.
+	 * @return this transient rope.
+	 */
+	public TransientRope append(final CharSequence suffix) {
+		return this.insert(this.length(), suffix);
+	}
+
+	/**
+	 * Inserts the specified character sequence at the specified offset.
+	 * @param offset the offset.
+	 * @param text the character sequence.
+	 * @return this transient rope.
+	 */
+	public TransientRope insert(final int offset, final CharSequence text) {
+		final int length = this.length();
+		if (offset < 0 || offset > length)
+			throw new IndexOutOfBoundsException("Rope index out of range: " + offset);
+		if ((long) length + text.length() > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Insertion would overflow length field.");
+		if (text.length() > 0)
+			this.root = this.root == null ? piece(text) : insert(this.root, offset, text);
+		return this;
+	}
+
+	/**
+	 * Deletes the specified range.
+	 * @param start the start index, inclusive.
+	 * @param end the end index, exclusive.
+	 * @return this transient rope.
+	 */
+	public TransientRope delete(final int start, final int end) {
+		Objects.checkFromToIndex(start, end, this.length());
+		if (start < end)
+			this.root = delete(this.root, start, end);
+		return this;
+	}
+
+	/**
+	 * Freezes the edits made so far into an immutable rope. This
+	 * transient rope may not be used afterwards.
+	 * @return the edited rope.
+	 */
+	@NotNull
+	public Rope persistent() {
+		this.ensureEditable();
+		final Rope result = this.root == null ? Rope.EMPTY : freeze(this.root);
+		this.root = null;
+		this.persisted = true;
+		return result;
+	}
+
+	private void ensureEditable() {
+		if (this.persisted)
+			throw new IllegalStateException("Transient rope used after persistent()");
+	}
+
+	private static Node insert(Node node, final int offset, final CharSequence text) {
+		if (node instanceof Shared shared) {
+			final Rope rope = shared.rope;
+			if (rope instanceof ConcatenationRope concatenation) {
+				node = new Branch(concatenation);
+			} else if (rope.length() + text.length() <= LEAF_CAPACITY) {
+				node = new Buffer(rope);
+			} else {
+				return join(join(shared(rope.subSequence(0, offset)), piece(text), null),
+						shared(rope.subSequence(offset, rope.length())), null);
+			}
+		}
+		if (node instanceof Buffer buffer) {
+			if (buffer.count + text.length() <= LEAF_CAPACITY) {
+				buffer.insert(offset, text);
+				return buffer;
+			}
+			final Buffer tail = buffer.split(offset);
+			return join(join(buffer.count == 0 ? null : buffer, piece(text), null), tail, null);
+		}
+		final Branch branch = (Branch) node;
+		final int leftLength = branch.left.length();
+		Node left = branch.left, right = branch.right;
+		if (offset <= leftLength)
+			left = insert(left, offset, text);
+		else
+			right = insert(right, offset - leftLength, text);
+		return join(left, right, branch);
+	}
+
+	private static Node delete(Node node, final int start, final int end) {
+		if (start == 0 && end == node.length())
+			return null;
+		if (node instanceof Shared shared) {
+			final Rope rope = shared.rope;
+			if (rope instanceof ConcatenationRope concatenation) {
+				node = new Branch(concatenation);
+			} else if (rope.length() <= LEAF_CAPACITY) {
+				node = new Buffer(rope);
+			} else {
+				return join(shared(rope.subSequence(0, start)), shared(rope.subSequence(end, rope.length())), null);
+			}
+		}
+		if (node instanceof Buffer buffer) {
+			buffer.delete(start, end);
+			return buffer;
+		}
+		final Branch branch = (Branch) node;
+		final int leftLength = branch.left.length();
+		Node left = branch.left, right = branch.right;
+		if (start < leftLength)
+			left = delete(left, start, Math.min(end, leftLength));
+		if (end > leftLength)
+			right = delete(right, Math.max(start - leftLength, 0), end - leftLength);
+		return join(left, right, branch);
+	}
+
+	/**
+	 * Join two balanced subtrees, either of which may be null, into a
+	 * balanced tree. The taller tree's facing spine is descended, taking
+	 * ownership of shared nodes along the way, and the specified branch
+	 * is reused for the new node if it is not null.
+	 */
+	private static Node join(final Node left, final Node right, final Branch reuse) {
+		if (left == null)
+			return right;
+		if (right == null)
+			return left;
+		final int leftHeight = left.height(), rightHeight = right.height();
+		if (leftHeight > rightHeight + 1) {
+			final Branch branch = owned(left);
+			branch.right = join(branch.right, right, reuse);
+			return rebalance(branch);
+		}
+		if (rightHeight > leftHeight + 1) {
+			final Branch branch = owned(right);
+			branch.left = join(left, branch.left, reuse);
+			return rebalance(branch);
+		}
+		final Branch branch = reuse != null ? reuse : new Branch();
+		branch.left = left;
+		branch.right = right;
+		branch.update();
+		return branch;
+	}
+
+	/**
+	 * Restore the balance of a branch whose child has grown by one level
+	 * in a join, using single or double rotations.
+	 */
+	private static Branch rebalance(final Branch branch) {
+		branch.update();
+		final int balance = branch.left.height() - branch.right.height();
+		if (balance > 1) {
+			Branch left = owned(branch.left);
+			if (left.right.height() > left.left.height())
+				left = rotateLeft(left);
+			branch.left = left;
+			return rotateRight(branch);
+		}
+		if (balance < -1) {
+			Branch right = owned(branch.right);
+			if (right.left.height() > right.right.height())
+				right = rotateRight(right);
+			branch.right = right;
+			return rotateLeft(branch);
+		}
+		return branch;
+	}
+
+	private static Branch rotateLeft(final Branch branch) {
+		final Branch right = owned(branch.right);
+		branch.right = right.left;
+		branch.update();
+		right.left = branch;
+		right.update();
+		return right;
+	}
+
+	private static Branch rotateRight(final Branch branch) {
+		final Branch left = owned(branch.left);
+		branch.left = left.right;
+		branch.update();
+		left.right = branch;
+		left.update();
+		return left;
+	}
+
+	/**
+	 * Returns an owned branch for a node with children.
+	 */
+	private static Branch owned(final Node node) {
+		if (node instanceof Branch branch)
+			return branch;
+		return new Branch((ConcatenationRope) ((Shared) node).rope);
+	}
+
+	private static Node shared(final Rope rope) {
+		return rope.isEmpty() ? null : new Shared(rope);
+	}
+
+	/**
+	 * Returns a node holding inserted text: short text is copied into an
+	 * owned buffer, longer text is shared as a rope.
+	 */
+	private static Node piece(final CharSequence text) {
+		if (text.length() <= LEAF_CAPACITY) {
+			final Buffer buffer = new Buffer();
+			buffer.insert(0, text);
+			return buffer;
+		}
+		return new Shared(Rope.copyOf(text));
+	}
+
+	private static Rope freeze(final Node node) {
+		if (node instanceof Shared shared)
+			return shared.rope;
+		if (node instanceof Buffer buffer)
+			return Rope.of(new String(buffer.chars, 0, buffer.count));
+		final Branch branch = (Branch) node;
+		return new ConcatenationRope(freeze(branch.left), freeze(branch.right));
+	}
+
+	private abstract static sealed class Node permits Shared, Branch, Buffer {
+		abstract int length();
+		abstract int height();
+	}
+
+	/**
+	 * An immutable subtree of the original rope, or inserted text.
+	 */
+	private static final class Shared extends Node {
+		final Rope rope;
+		final int height;
+
+		Shared(final Rope rope) {
+			this.rope = rope;
+			this.height = rope instanceof ConcatenationRope ? Math.max(((AbstractRope) rope).depth(), 1) : 0;
+		}
+
+		@Override
+		int length() {
+			return this.rope.length();
+		}
+
+		@Override
+		int height() {
+			return this.height;
+		}
+	}
+
+	/**
+	 * An owned concatenation node.
+	 */
+	private static final class Branch extends Node {
+		Node left;
+		Node right;
+		int length;
+		int height;
+
+		Branch() {
+		}
+
+		Branch(final ConcatenationRope concatenation) {
+			this.left = new Shared(concatenation.getLeft());
+			this.right = new Shared(concatenation.getRight());
+			this.update();
+		}
+
+		void update() {
+			this.length = this.left.length() + this.right.length();
+			this.height = 1 + Math.max(this.left.height(), this.right.height());
+		}
+
+		@Override
+		int length() {
+			return this.length;
+		}
+
+		@Override
+		int height() {
+			return this.height;
+		}
+	}
+
+	/**
+	 * An owned, fixed-capacity leaf edited in place.
+	 */
+	private static final class Buffer extends Node {
+		final char[] chars = new char[LEAF_CAPACITY];
+		int count;
+
+		Buffer() {
+		}
+
+		Buffer(final Rope rope) {
+			rope.getChars(0, rope.length(), this.chars, 0);
+			this.count = rope.length();
+		}
+
+		void insert(final int offset, final CharSequence text) {
+			final int n = text.length();
+			System.arraycopy(this.chars, offset, this.chars, offset + n, this.count - offset);
+			if (text instanceof String string)
+				string.getChars(0, n, this.chars, offset);
+			else if (text instanceof Rope rope)
+				rope.getChars(0, n, this.chars, offset);
+			else
+				for (int j=0; j<n; ++j)
+					this.chars[offset + j] = text.charAt(j);
+			this.count += n;
+		}
+
+		void delete(final int start, final int end) {
+			System.arraycopy(this.chars, end, this.chars, start, this.count - end);
+			this.count -= end - start;
+		}
+
+		/**
+		 * Moves the characters from the specified offset on into a new
+		 * buffer, or returns null if there are none.
+		 */
+		Buffer split(final int offset) {
+			if (offset == this.count)
+				return null;
+			final Buffer tail = new Buffer();
+			System.arraycopy(this.chars, offset, tail.chars, 0, this.count - offset);
+			tail.count = this.count - offset;
+			this.count = offset;
+			return tail;
+		}
+
+		@Override
+		int length() {
+			return this.count;
+		}
+
+		@Override
+		int height() {
+			return 0;
+		}
+	}
+}
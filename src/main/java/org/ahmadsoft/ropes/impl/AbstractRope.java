@@ -22,16 +22,16 @@
  */
 package org.ahmadsoft.ropes.impl;
 
-import java.io.IOException;
 import java.io.ObjectStreamException;
 import java.io.Serial;
-import java.io.StringWriter;
 import java.util.Arrays;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.ahmadsoft.ropes.CharIterator;
 import org.ahmadsoft.ropes.Rope;
+import org.ahmadsoft.ropes.RopeEdit;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -42,6 +42,11 @@ public sealed abstract class AbstractRope implements Rope
 		permits FlatRope, ConcatenationRope, SubstringRope, ReverseRope {
 
 	protected int hashCode = 0;
+	/**
+	 * Whether the hash code has been computed and is zero, so that it is
+	 * not recomputed on every call, as in <code>String</code>.
+	 */
+	private boolean hashIsZero = false;
 
 	@Override
 	public @NotNull Rope append(final char c) {
@@ -65,15 +70,12 @@ public sealed abstract class AbstractRope implements Rope
 
 	@Override
 	public int compareTo(final CharSequence sequence) {
-		final int compareTill = Math.min(sequence.length(), this.length());
-		final CharIterator i = this.iterator();
-		for (int j=0; j<compareTill; ++j) {
-			final char x = i.nextChar();
-			final char y = sequence.charAt(j);
-			if (x != y)
-				return x - y;
-		}
-		return this.length() - sequence.length();
+		final int mismatch = sequence instanceof Rope rope
+				? RopeComparison.mismatch(this, rope)
+				: RopeComparison.mismatch(this, sequence);
+		if (mismatch < 0)
+			return this.length() - sequence.length();
+		return this.charAt(mismatch) - sequence.charAt(mismatch);
 	}
 
 	@Override
@@ -83,6 +85,11 @@ public sealed abstract class AbstractRope implements Rope
 		return this.subSequence(0, start).append(this.subSequence(end, this.length()));
 	}
 
+	@Override
+	public @NotNull Rope applyEdits(final List<RopeEdit> edits) {
+		return EditBatch.apply(this, edits);
+	}
+
 	/*
 	 * The depth of the current rope, as defined in "Ropes: an Alternative
 	 * to Strings".
@@ -91,19 +98,15 @@ public sealed abstract class AbstractRope implements Rope
 
 	@Override
 	public boolean equals(final Object other) {
-		if (other instanceof Rope rope) {
-			if (rope.hashCode() != this.hashCode() || rope.length() != this.length())
+		if (other instanceof AbstractRope rope) {
+			if (rope == this)
+				return true;
+			if (rope.length() != this.length())
 				return false;
-			final CharIterator i1 = this.iterator();
-			final CharIterator i2 = rope.iterator();
-
-			while (i1.hasNext()) {
-				final char a = i1.nextChar();
-				final char b = i2.nextChar();
-				if (a != b)
-					return false;
-			}
-			return true;
+			// only compare hash codes that are already known
+			if (this.hashIsKnown() && rope.hashIsKnown() && this.hashCode != rope.hashCode)
+				return false;
+			return RopeComparison.mismatch(this, rope) < 0;
 		}
 		return false;
 	}
@@ -117,22 +120,43 @@ public sealed abstract class AbstractRope implements Rope
 		return this;
 	}
 
+	/**
+	 * Returns the hash code of this rope, which is the same as that of a
+	 * <code>String</code> with the same characters. It is computed once
+	 * and cached; concatenations combine the cached hash codes of their
+	 * children.
+	 */
 	@Override
 	public int hashCode() {
-		if (this.hashCode == 0 && this.length() > 0) {
-			if (this.length() < 6) {
-				var iter = this.iterator();
-				while (iter.hasNext())
-					this.hashCode = 31 * this.hashCode + iter.nextChar();
-			} else {
-				// TODO: Why doesn't this consider all chars?
-				final CharIterator i = this.iterator();
-				for (int j=0;j<5; ++j)
-					this.hashCode = 31 * this.hashCode + i.nextChar();
-				this.hashCode = 31 * this.hashCode + this.charAt(this.length() - 1);
-			}
+		int h = this.hashCode;
+		if (h == 0 && !this.hashIsZero) {
+			h = this.computeHashCode();
+			if (h == 0)
+				this.hashIsZero = true;
+			else
+				this.hashCode = h;
 		}
-		return this.hashCode;
+		return h;
+	}
+
+	/**
+	 * Returns whether the hash code of this rope has been computed.
+	 */
+	private boolean hashIsKnown() {
+		return this.hashCode != 0 || this.hashIsZero;
+	}
+
+	/**
+	 * Computes the hash code of this rope as {@link String#hashCode()}
+	 * would, from all of its characters.
+	 * @return the hash code.
+	 */
+	int computeHashCode() {
+		int h = 0;
+		final CharIterator i = this.iterator();
+		while (i.hasNext())
+			h = 31 * h + i.nextChar();
+		return h;
 	}
 
 	@Override
@@ -287,6 +311,13 @@ public sealed abstract class AbstractRope implements Rope
 		return this;
 	}
 
+	@Override
+	public @NotNull Rope rebalance(final int targetLeafLength) {
+		if (targetLeafLength < 1)
+			throw new IllegalArgumentException("Illegal target leaf length: " + targetLeafLength);
+		return this;
+	}
+
 	@Override
 	public @NotNull Rope trimEnd() {
 		int index = this.length() + 1;
@@ -304,14 +335,10 @@ public sealed abstract class AbstractRope implements Rope
 
 	@Override
 	public String toString() {
-		final StringWriter out = new StringWriter(this.length());
-		try {
-			this.write(out);
-			out.close();
-		} catch (final IOException e) {
-			throw new RuntimeException(e);
-		}
-		return out.toString();
+		// fill a single buffer leaf by leaf, avoiding an intermediate Writer
+		final char[] chars = new char[this.length()];
+		this.getChars(0, chars.length, chars, 0);
+		return new String(chars);
 	}
 
 	@Override
@@ -49,7 +49,10 @@ public final class ConcatenationRope extends AbstractRope {
     public ConcatenationRope(final Rope left, final Rope right) {
         this.left   = Objects.requireNonNull(left);
         this.right  = Objects.requireNonNull(right);
-        this.depth  = (byte) (Math.max(RopeUtilities.depth(left), RopeUtilities.depth(right)) + 1);
+        // saturates rather than wrapping, so hand-built ropes deeper than
+        // the field can count are still known to be deep
+        this.depth  = (byte) Math.min(Math.max(RopeUtilities.depth(left), RopeUtilities.depth(right)) + 1,
+                Byte.MAX_VALUE);
         this.length = left.length() + right.length();
     }
 
@@ -61,55 +64,36 @@ public final class ConcatenationRope extends AbstractRope {
         return (index < this.left.length() ? this.left.charAt(index): this.right.charAt(index - this.left.length()));
     }
 
+    @Override
+    int computeHashCode() {
+        // the polynomial hash of the left characters is shifted past the right ones
+        return this.left.hashCode() * RopeUtilities.pow31(this.right.length()) + this.right.hashCode();
+    }
+
     @Override
     public byte depth() {
         return this.depth;
     }
 
     @Override
-    public CharSequence getForSequentialAccess() {
-        return this.getForSequentialAccess(this);
+    public void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+        Objects.checkFromToIndex(srcBegin, srcEnd, this.length());
+        // check the destination up front, so it is never left half-written
+        Objects.checkFromIndexSize(dstBegin, srcEnd - srcBegin, dst.length);
+        final int l = this.left.length();
+        if (srcEnd <= l) {
+            this.left.getChars(srcBegin, srcEnd, dst, dstBegin);
+        } else if (srcBegin >= l) {
+            this.right.getChars(srcBegin - l, srcEnd - l, dst, dstBegin);
+        } else {
+            this.left.getChars(srcBegin, l, dst, dstBegin);
+            this.right.getChars(0, srcEnd - l, dst, dstBegin + l - srcBegin);
+        }
     }
 
-    /*
-     * Returns this object as a char sequence optimized for
-     * regular expression searches.
-     * <p>
-     * <emph>This method is public only to facilitate unit
-     * testing.</emph>
-     */
-    private CharSequence getForSequentialAccess(final Rope rope) {
-        return new CharSequence() {
-
-            private final ConcatenationRopeIteratorImpl iterator = (ConcatenationRopeIteratorImpl) rope.iterator(0);
-
-            @Override
-            public char charAt(final int index) {
-                if (index > this.iterator.getPos()) {
-                    this.iterator.skip(index-this.iterator.getPos()-1);
-                    return this.iterator.nextChar();
-                } else { /* if (index <= lastIndex) */
-                    final int toMoveBack = this.iterator.getPos() - index + 1;
-                    if (this.iterator.canMoveBackwards(toMoveBack)) {
-                        this.iterator.moveBackwards(toMoveBack);
-                        return this.iterator.nextChar();
-                    } else {
-                        return rope.charAt(index);
-                    }
-                }
-            }
-
-            @Override
-            public int length() {
-                return rope.length();
-            }
-
-            @Override
-            public CharSequence subSequence(final int start, final int end) {
-                return rope.subSequence(start, end);
-            }
-
-        };
+    @Override
+    public CharSequence getForSequentialAccess() {
+        return new SequentialAccessView(this);
     }
 
     /**
@@ -149,6 +133,13 @@ public final class ConcatenationRope extends AbstractRope {
         return RopeUtilities.rebalance(this);
     }
 
+    @Override
+    public @NotNull Rope rebalance(final int targetLeafLength) {
+        if (targetLeafLength < 1)
+            throw new IllegalArgumentException("Illegal target leaf length: " + targetLeafLength);
+        return RopeUtilities.rebalance(this, targetLeafLength);
+    }
+
     @Override
     public @NotNull Rope reverse() {
         return RopeUtilities.concatenate(this.getRight().reverse(), this.getLeft().reverse());
@@ -201,33 +192,37 @@ public final class ConcatenationRope extends AbstractRope {
     }
     
 
-//  /**
-//   * Not currently used. Can be used if rebalancing is performed
-//   * during concatenation.
-//   **/
-//  private ConcatenationRope rotateLeft(final ConcatenationRope input) {
-//      final Rope _R = input.getRight();
-//      if (!(_R instanceof ConcatenationRope))
-//          return input;
-//      final ConcatenationRope R = (ConcatenationRope) _R;
-//      final Rope L = input.getLeft();
-//      final Rope A = R.getLeft();
-//      final Rope B = R.getRight();
-//      return new ConcatenationRope(new ConcatenationRope(L, A), B);
-//  }
-//
-//  /**
-//   * Not currently used. Can be used if rebalancing is performed
-//   * during concatenation.
-//   **/
-//  private ConcatenationRope rotateRight(final ConcatenationRope input) {
-//      final Rope _L = input.getLeft();
-//      if (!(_L instanceof ConcatenationRope))
-//          return input;
-//      final ConcatenationRope L = (ConcatenationRope) _L;
-//      final Rope R = input.getRight();
-//      final Rope A = L.getLeft();
-//      final Rope B = L.getRight();
-//      return new ConcatenationRope(A, new ConcatenationRope(B, R));
-//  }
+    /**
+     * Rotate a concatenation of the form <code>(L, (A, B))</code> into
+     * <code>((L, A), B)</code>. Used to restore balance when joining
+     * ropes of differing depth.
+     * @param input the rope to rotate.
+     * @return the rotated rope, or <code>input</code> if its right-hand
+     * rope is not a concatenation.
+     */
+    static ConcatenationRope rotateLeft(final ConcatenationRope input) {
+        if (!(input.getRight() instanceof ConcatenationRope right))
+            return input;
+        final Rope L = input.getLeft();
+        final Rope A = right.getLeft();
+        final Rope B = right.getRight();
+        return new ConcatenationRope(new ConcatenationRope(L, A), B);
+    }
+
+    /**
+     * Rotate a concatenation of the form <code>((A, B), R)</code> into
+     * <code>(A, (B, R))</code>. Used to restore balance when joining
+     * ropes of differing depth.
+     * @param input the rope to rotate.
+     * @return the rotated rope, or <code>input</code> if its left-hand
+     * rope is not a concatenation.
+     */
+    static ConcatenationRope rotateRight(final ConcatenationRope input) {
+        if (!(input.getLeft() instanceof ConcatenationRope left))
+            return input;
+        final Rope R = input.getRight();
+        final Rope A = left.getLeft();
+        final Rope B = left.getRight();
+        return new ConcatenationRope(A, new ConcatenationRope(B, R));
+    }
 }
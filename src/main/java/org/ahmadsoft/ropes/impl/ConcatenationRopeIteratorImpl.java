@@ -22,7 +22,8 @@
  */
 package org.ahmadsoft.ropes.impl;
 
-import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 
 import org.ahmadsoft.ropes.CharIterator;
 import org.ahmadsoft.ropes.Rope;
@@ -32,16 +33,29 @@ import org.ahmadsoft.ropes.Rope;
  * rope structure is guaranteed to be O(n) so long as it is reasonably
  * well-balanced. Compare this to O(nlogn) for iteration using
  * <code>charAt</code>.
+ * <p>
+ * Pending subtrees are kept on an array stack sized from the depth of
+ * the rope, and leaf content is copied into a fixed window a block at
+ * a time, so iteration performs no allocation after construction.
  *
  * @author aahmad
  */
 public class ConcatenationRopeIteratorImpl implements CharIterator {
 
-	private final ArrayDeque<Rope> toTraverse;
+	/**
+	 * The maximum number of characters copied out of a leaf at once.
+	 */
+	private static final int WINDOW_SIZE = 256;
+
+	private final Rope rope;
+	private Rope[] toTraverse;
+	private int toTraverseSize;
+	private final char[] window;
 	private Rope currentRope;
-	private int currentRopePos;
-	private int skip;
-	private int currentAbsolutePos;
+	private int currentRopeStart;
+	private int windowStart;
+	private int windowLength;
+	private int windowPos;
 
 
 	public ConcatenationRopeIteratorImpl(final Rope rope) {
@@ -49,100 +63,118 @@ public class ConcatenationRopeIteratorImpl implements CharIterator {
 	}
 
 	public ConcatenationRopeIteratorImpl(final Rope rope, final int start) {
-		this.toTraverse = new ArrayDeque<Rope>();
-		this.toTraverse.push(rope);
-		this.currentRope = null;
-		this.initialize();
-
 		if (start < 0 || start > rope.length()) {
 			throw new IllegalArgumentException("Rope index out of range: " + start);
 		}
+		this.rope = rope;
+		// A pending right-hand sibling is pushed at most once per level.
+		this.toTraverse = new Rope[Math.max(RopeUtilities.depth(rope), 1)];
+		this.toTraverse[this.toTraverseSize++] = rope;
+		this.window = new char[Math.min(WINDOW_SIZE, rope.length())];
+		this.currentRope = null;
 		this.moveForward(start);
 	}
 
-	public boolean canMoveBackwards(final int amount) {
-		return (-1 <= (this.currentRopePos - amount));
-	}
-
 	public int getPos() {
-		return this.currentAbsolutePos;
+		return this.nextIndex() - 1;
 	}
 
 	@Override
 	public boolean hasNext() {
-		return this.currentRopePos < this.currentRope.length() - 1 || !this.toTraverse.isEmpty();
+		return this.nextIndex() < this.rope.length();
 	}
 
 	/**
-	 * Initialize the currentRope and currentRopePos fields.
+	 * Returns the absolute index of the next character to be returned.
 	 */
-	private void initialize() {
-		while (!this.toTraverse.isEmpty()) {
-			this.currentRope = this.toTraverse.pop();
-			if (this.currentRope instanceof ConcatenationRope current) {
-				this.toTraverse.push(current.getRight());
-				this.toTraverse.push(current.getLeft());
-			} else {
-				break;
-			}
-		}
-		if (this.currentRope == null)
-			throw new IllegalArgumentException("No terminal ropes present.");
-		this.currentRopePos = -1;
-		this.currentAbsolutePos = -1;
-	}
-
-	public void moveBackwards(final int amount) {
-		if (!this.canMoveBackwards(amount))
-			throw new IllegalArgumentException("Unable to move backwards " + amount + ".");
-		this.currentRopePos -= amount;
-		this.currentAbsolutePos -= amount;
+	private int nextIndex() {
+		return this.currentRopeStart + this.windowStart + this.windowPos;
 	}
 
-	public void moveForward(final int amount) {
-		this.currentAbsolutePos += amount;
-		int remainingAmt = amount;
-		while (remainingAmt != 0) {
-			final int available = this.currentRope.length() - this.currentRopePos - 1;
-			if (remainingAmt <= available) {
-				this.currentRopePos += remainingAmt;
-				return;
-			}
-			remainingAmt -= available;
-			if (this.toTraverse.isEmpty()) {
-				this.currentAbsolutePos -= remainingAmt;
-				throw new IllegalArgumentException("Unable to move forward " + amount + ". Reached end of rope.");
+	/**
+	 * Make the leaf containing the specified index current. Only
+	 * moves forward; subtrees lying entirely before the index are
+	 * skipped without being descended.
+	 */
+	private void locate(final int index) {
+		int start = this.currentRope == null ? 0 : this.currentRopeStart + this.currentRope.length();
+		while (true) {
+			Rope node = this.toTraverse[--this.toTraverseSize];
+			this.toTraverse[this.toTraverseSize] = null;
+			final int end = start + node.length();
+			if (index >= end) {
+				start = end;
+				continue;
 			}
-
-			while (!this.toTraverse.isEmpty()) {
-				this.currentRope = this.toTraverse.pop();
-				if (this.currentRope instanceof ConcatenationRope current) {
-					this.toTraverse.push(current.getRight());
-					this.toTraverse.push(current.getLeft());
+			while (node instanceof ConcatenationRope current) {
+				final int leftEnd = start + current.getLeft().length();
+				if (index < leftEnd) {
+					if (this.toTraverseSize == this.toTraverse.length) {
+						// only reachable if the depth field saturated on a hand-built rope
+						this.toTraverse = Arrays.copyOf(this.toTraverse, this.toTraverseSize * 2);
+					}
+					this.toTraverse[this.toTraverseSize++] = current.getRight();
+					node = current.getLeft();
 				} else {
-					this.currentRopePos = -1;
-					break;
+					start = leftEnd;
+					node = current.getRight();
 				}
 			}
+			this.currentRope = node;
+			this.currentRopeStart = start;
+			this.windowStart = 0;
+			this.windowLength = 0;
+			return;
 		}
 	}
 
+	/**
+	 * Copy a block of the current leaf, beginning at the specified
+	 * offset within the leaf, into the window.
+	 */
+	private void fill(final int from) {
+		final int to = Math.min(from + this.window.length, this.currentRope.length());
+		this.currentRope.getChars(from, to, this.window, 0);
+		this.windowStart = from;
+		this.windowLength = to - from;
+	}
+
+	/**
+	 * Position this iterator so the character at the specified index
+	 * is returned next.
+	 */
+	private void position(final int next) {
+		if (this.rope.length() == 0)
+			return;
+		// at the very end, remain on the last leaf just past its final character
+		final int target = next < this.rope.length() ? next : next - 1;
+		if (this.currentRope == null || target >= this.currentRopeStart + this.currentRope.length())
+			this.locate(target);
+		final int leafOffset = target - this.currentRopeStart;
+		if (leafOffset < this.windowStart || leafOffset >= this.windowStart + this.windowLength)
+			this.fill(leafOffset);
+		this.windowPos = next - this.currentRopeStart - this.windowStart;
+	}
+
+	public void moveForward(final int amount) {
+		final int next = this.nextIndex() + amount;
+		if (next > this.rope.length())
+			throw new IllegalArgumentException("Unable to move forward " + amount + ". Reached end of rope.");
+		this.position(next);
+	}
+
 	@Override
 	public char nextChar() {
-		this.moveForward(1 + this.skip);
-		this.skip = 0;
-		return this.currentRope.charAt(this.currentRopePos);
+		if (this.windowPos >= this.windowLength) {
+			if (!this.hasNext())
+				throw new NoSuchElementException();
+			this.position(this.nextIndex());
+		}
+		return this.window[this.windowPos++];
 	}
 
 	@Override
 	public void remove() {
 		throw new UnsupportedOperationException("Rope iterator is read-only.");
 	}
-
-	/* (non-Javadoc)
-	 * @see org.ahmadsoft.ropes.impl.RopeIterators#skip(int)
-	 */
-	public void skip(final int skip) {
-		this.skip = skip;
-	}
 }
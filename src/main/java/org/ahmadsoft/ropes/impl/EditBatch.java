@@ -0,0 +1,132 @@
+package org.ahmadsoft.ropes.impl;
+
+import java.util.List;
+
+import org.ahmadsoft.ropes.Rope;
+import org.ahmadsoft.ropes.RopeEdit;
+
+/**
+ * Applies a sorted batch of edits to a rope in a single walk of the
+ * tree.
+ * <p>
+ * The walk only descends into subtrees that an edit touches; every
+ * other subtree is reused as it is, and the pieces are joined back
+ * together on the way up. Each edit is split between the children of
+ * a concatenation at the boundary: a deletion may span both, while
+ * inserted text at the boundary goes to the left child.
+ */
+final class EditBatch {
+
+	private final int[] starts;
+	private final int[] ends;
+	private final Rope[] texts;
+
+	private EditBatch(final int[] starts, final int[] ends, final Rope[] texts) {
+		this.starts = starts;
+		this.ends = ends;
+		this.texts = texts;
+	}
+
+	/**
+	 * Apply a sorted batch of edits to a rope.
+	 * @param r the rope.
+	 * @param edits the edits, sorted by offset and not overlapping.
+	 * @return the edited rope.
+	 * @throws IllegalArgumentException if the edits are out of order or
+	 * overlap.
+	 * @throws IndexOutOfBoundsException if an edit extends past the end
+	 * of the rope.
+	 */
+	static Rope apply(final Rope r, final List<RopeEdit> edits) {
+		final int n = edits.size();
+		final int[] starts = new int[n], ends = new int[n];
+		final Rope[] texts = new Rope[n];
+		int previousEnd = 0;
+		for (int j=0; j<n; ++j) {
+			final RopeEdit edit = edits.get(j);
+			final long end = (long) edit.offset() + edit.deleteLength();
+			if (end > r.length())
+				throw new IndexOutOfBoundsException("Rope index out of range: " + end);
+			if (edit.offset() < previousEnd)
+				throw new IllegalArgumentException("Edits out of order or overlapping at offset " + edit.offset());
+			starts[j] = edit.offset();
+			ends[j] = (int) end;
+			texts[j] = Rope.viewOf(edit.insertText());
+			previousEnd = (int) end;
+		}
+		if (n == 0)
+			return r;
+		return new EditBatch(starts, ends, texts).rebuild(r, 0, 0, n, 0, n);
+	}
+
+	/**
+	 * Rebuild a subtree.
+	 * @param node the subtree.
+	 * @param start the offset of the subtree in the original rope.
+	 * @param textLo the first edit whose text is inserted in this subtree.
+	 * @param textHi the end of the edits whose text is inserted here.
+	 * @param deleteLo the first edit that may delete from this subtree.
+	 * @param deleteHi the end of the edits that may delete from here.
+	 * @return the edited subtree.
+	 */
+	private Rope rebuild(final Rope node, final int start, final int textLo, final int textHi,
+			final int deleteLo, final int deleteHi) {
+		final int end = start + node.length();
+		if (!this.insertsInto(textLo, textHi)) {
+			if (!this.deletesFrom(start, end, deleteLo, deleteHi))
+				return node;
+			for (int j=deleteLo; j<deleteHi; ++j)
+				if (this.starts[j] <= start && this.ends[j] >= end)
+					return Rope.EMPTY;
+		}
+		if (node instanceof ConcatenationRope concatenation) {
+			final Rope left = concatenation.getLeft(), right = concatenation.getRight();
+			final int middle = start + left.length();
+			// texts at the boundary go left; deletions are split between both sides
+			int textMiddle = textLo;
+			while (textMiddle < textHi && this.starts[textMiddle] <= middle)
+				++textMiddle;
+			int leftDeleteHi = deleteLo;
+			while (leftDeleteHi < deleteHi && this.starts[leftDeleteHi] < middle)
+				++leftDeleteHi;
+			int rightDeleteLo = leftDeleteHi;
+			while (rightDeleteLo > deleteLo && this.ends[rightDeleteLo - 1] > middle)
+				--rightDeleteLo;
+			return RopeUtilities.concatenate(
+				this.rebuild(left, start, textLo, textMiddle, deleteLo, leftDeleteHi),
+				this.rebuild(right, middle, textMiddle, textHi, rightDeleteLo, deleteHi));
+		}
+
+		// a leaf: splice the retained ranges and the inserted texts together
+		Rope result = Rope.EMPTY;
+		int position = start;
+		for (int j=Math.min(textLo, deleteLo); j<Math.max(textHi, deleteHi); ++j) {
+			final int cut = Math.max(start, Math.min(this.starts[j], end));
+			if (cut > position) {
+				result = RopeUtilities.concatenate(result, node.subSequence(position - start, cut - start));
+				position = cut;
+			}
+			if (j >= textLo && j < textHi)
+				result = RopeUtilities.concatenate(result, this.texts[j]);
+			if (j >= deleteLo && j < deleteHi)
+				position = Math.max(position, Math.min(this.ends[j], end));
+		}
+		if (position < end)
+			result = RopeUtilities.concatenate(result, node.subSequence(position - start, end - start));
+		return result;
+	}
+
+	private boolean insertsInto(final int textLo, final int textHi) {
+		for (int j=textLo; j<textHi; ++j)
+			if (!this.texts[j].isEmpty())
+				return true;
+		return false;
+	}
+
+	private boolean deletesFrom(final int start, final int end, final int deleteLo, final int deleteHi) {
+		for (int j=deleteLo; j<deleteHi; ++j)
+			if (this.starts[j] < end && this.ends[j] > start && this.starts[j] < this.ends[j])
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,315 @@
+package org.ahmadsoft.ropes.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import org.ahmadsoft.ropes.CharIterator;
+import org.ahmadsoft.ropes.Rope;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A rope backed by a byte buffer, typically a memory-mapped file, in a
+ * fixed-width encoding: one byte per character for Latin-1 and ASCII,
+ * or two for UTF-16. Bytes outside ASCII in an ASCII buffer are read as
+ * U+FFFD, the replacement character.
+ * <p>
+ * Nothing is read until a character is accessed, so a rope over a
+ * mapped file is created in constant time and its pages are faulted in
+ * on demand. Subsequences are slices of the same buffer, so edits build
+ * concatenations over the mapped data instead of copying it.
+ */
+public final class FlatByteBufferRope extends FlatRope {
+
+	/**
+	 * The largest number of bytes mapped as a single leaf.
+	 */
+	private static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+	/**
+	 * The number of characters copied at a time by bulk operations.
+	 */
+	private static final int COPY_SIZE = 8192;
+
+	/**
+	 * The Latin-1 or ASCII bytes, or null for a UTF-16 buffer.
+	 */
+	private final ByteBuffer bytes;
+	/**
+	 * The UTF-16 characters, or null for a byte buffer.
+	 */
+	private final CharBuffer chars;
+	/**
+	 * Whether the bytes are ASCII, so that bytes above 0x7F are read as
+	 * U+FFFD rather than as Latin-1 characters.
+	 */
+	private final boolean ascii;
+
+	private FlatByteBufferRope(final ByteBuffer bytes, final CharBuffer chars, final boolean ascii) {
+		this.bytes = bytes;
+		this.chars = chars;
+		this.ascii = ascii;
+	}
+
+	/**
+	 * Map a file as a rope. US-ASCII and ISO-8859-1 files are mapped one
+	 * byte per character, UTF-16 files two bytes per character; a UTF-16
+	 * byte order mark selects the byte order and is skipped. Bytes
+	 * outside ASCII in a US-ASCII file are read as U+FFFD.
+	 * @param file the file.
+	 * @param charset the charset of the file.
+	 * @return a rope over the mapped file.
+	 * @throws IOException if the file cannot be mapped, or holds an odd
+	 * number of bytes of UTF-16.
+	 * @throws IllegalArgumentException if the charset is not fixed-width,
+	 * or the file holds too many characters for a rope.
+	 */
+	@ApiStatus.Internal
+	public static Rope map(final Path file, final Charset charset) throws IOException {
+		final boolean twoByte;
+		ByteOrder order = ByteOrder.BIG_ENDIAN;
+		if (charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII)) {
+			twoByte = false;
+		} else if (charset.equals(StandardCharsets.UTF_16BE) || charset.equals(StandardCharsets.UTF_16)) {
+			twoByte = true;
+		} else if (charset.equals(StandardCharsets.UTF_16LE)) {
+			twoByte = true;
+			order = ByteOrder.LITTLE_ENDIAN;
+		} else {
+			throw new IllegalArgumentException("Charset is not fixed-width: " + charset);
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long position = 0;
+			final long size = channel.size();
+			if (charset.equals(StandardCharsets.UTF_16) && size >= 2) {
+				final ByteBuffer mark = channel.map(FileChannel.MapMode.READ_ONLY, 0, 2);
+				if (mark.get(0) == (byte) 0xFE && mark.get(1) == (byte) 0xFF) {
+					position = 2;
+				} else if (mark.get(0) == (byte) 0xFF && mark.get(1) == (byte) 0xFE) {
+					position = 2;
+					order = ByteOrder.LITTLE_ENDIAN;
+				}
+			}
+			if (twoByte && (size - position) % 2 != 0)
+				throw new MalformedInputException(1);
+			if ((size - position) / (twoByte ? 2 : 1) > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("File is too large for a rope: " + file);
+
+			Rope result = Rope.EMPTY;
+			while (position < size) {
+				final long segmentSize = Math.min(size - position, MAX_SEGMENT_SIZE);
+				final ByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, position, segmentSize);
+				result = result.append(twoByte
+						? new FlatByteBufferRope(null, segment.order(order).asCharBuffer(), false)
+						: new FlatByteBufferRope(segment, null, charset.equals(StandardCharsets.US_ASCII)));
+				position += segmentSize;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Returns the character a byte of the buffer stands for.
+	 */
+	private char decode(final byte b) {
+		return this.ascii && b < 0 ? '\uFFFD' : (char) (b & 0xFF);
+	}
+
+	/**
+	 * Returns a read-only buffer over a range of the underlying bytes of a
+	 * Latin-1 buffer, or <code>null</code> for a UTF-16 buffer. For an
+	 * ASCII buffer, the range is cut short at the first byte outside
+	 * ASCII, and is <code>null</code> if that is the first byte.
+	 */
+	@Override
+	ByteBuffer latin1Buffer(final int start, final int end) {
+		if (this.bytes == null)
+			return null;
+		Objects.checkFromToIndex(start, end, this.length());
+		int stop = end;
+		if (this.ascii) {
+			for (int j=start; j<end; ++j) {
+				if (this.bytes.get(j) < 0) {
+					stop = j;
+					break;
+				}
+			}
+			if (stop == start)
+				return null;
+		}
+		return this.bytes.slice(start, stop - start).asReadOnlyBuffer();
+	}
+
+	@Override
+	CharBuffer charBuffer(final int start, final int end) {
+		if (this.chars == null)
+			return super.charBuffer(start, end);
+		Objects.checkFromToIndex(start, end, this.length());
+		return this.chars.slice(start, end - start).asReadOnlyBuffer();
+	}
+
+	@Override
+	public char charAt(final int index) {
+		Objects.checkIndex(index, this.length());
+		return this.chars != null ? this.chars.get(index) : this.decode(this.bytes.get(index));
+	}
+
+	@Override
+	public byte depth() {
+		return 0;
+	}
+
+	@Override
+	public void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+		Objects.checkFromToIndex(srcBegin, srcEnd, this.length());
+		Objects.checkFromIndexSize(dstBegin, srcEnd - srcBegin, dst.length);
+		if (this.chars != null) {
+			this.chars.get(srcBegin, dst, dstBegin, srcEnd - srcBegin);
+		} else {
+			for (int j=srcBegin; j<srcEnd; ++j)
+				dst[dstBegin + j - srcBegin] = this.decode(this.bytes.get(j));
+		}
+	}
+
+	@Override
+	public int indexOf(final char ch) {
+		return this.length() == 0 ? -1 : this.indexOf(ch, 0);
+	}
+
+	@Override
+	public int indexOf(final char ch, final int fromIndex) {
+		if (fromIndex < 0 || fromIndex >= this.length())
+			throw new IndexOutOfBoundsException("Rope index out of range: " + fromIndex);
+		if (this.chars != null) {
+			for (int j=fromIndex; j<this.chars.limit(); ++j)
+				if (this.chars.get(j) == ch)
+					return j;
+		} else if (this.ascii) {
+			for (int j=fromIndex; j<this.bytes.limit(); ++j)
+				if (this.decode(this.bytes.get(j)) == ch)
+					return j;
+		} else if (ch <= 0xFF) {
+			final byte b = (byte) ch;
+			for (int j=fromIndex; j<this.bytes.limit(); ++j)
+				if (this.bytes.get(j) == b)
+					return j;
+		}
+		return -1;
+	}
+
+	@Override
+	public CharIterator iterator(final int start) {
+		if (start < 0 || start > this.length())
+			throw new IndexOutOfBoundsException("Rope index out of range: " + start);
+		return new CharIterator() {
+			int current = start;
+			@Override
+			public boolean hasNext() {
+				return this.current < FlatByteBufferRope.this.length();
+			}
+
+			@Override
+			public char nextChar() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return FlatByteBufferRope.this.charAt(this.current++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Rope iterator is read-only.");
+			}
+		};
+	}
+
+	@Override
+	public int length() {
+		return this.chars != null ? this.chars.limit() : this.bytes.limit();
+	}
+
+	@Override
+	public @NotNull Rope reverse() {
+		return new ReverseRope(this);
+	}
+
+	@Override
+	public CharIterator reverseIterator(final int start) {
+		if (start < 0 || start > this.length())
+			throw new IndexOutOfBoundsException("Rope index out of range: " + start);
+		return new CharIterator() {
+			int current = FlatByteBufferRope.this.length() - start;
+			@Override
+			public boolean hasNext() {
+				return this.current > 0;
+			}
+
+			@Override
+			public char nextChar() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return FlatByteBufferRope.this.charAt(--this.current);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Rope iterator is read-only.");
+			}
+		};
+	}
+
+	@Override
+	public @NotNull Rope subSequence(final int start, final int end) {
+		Objects.checkFromToIndex(start, end, this.length());
+		if (start == 0 && end == this.length())
+			return this;
+		if (end - start < 16)
+			return new FlatStringRope(this.toString(start, end - start));
+		return this.chars != null
+				? new FlatByteBufferRope(null, this.chars.slice(start, end - start), false)
+				: new FlatByteBufferRope(this.bytes.slice(start, end - start), null, this.ascii);
+	}
+
+	@Override
+	@NotNull
+	public String toString() {
+		return this.toString(0, this.length());
+	}
+
+	public String toString(final int offset, final int length) {
+		Objects.checkFromIndexSize(offset, length, this.length());
+		if (this.chars != null) {
+			final char[] result = new char[length];
+			this.chars.get(offset, result, 0, length);
+			return new String(result);
+		}
+		final byte[] result = new byte[length];
+		this.bytes.get(offset, result, 0, length);
+		return new String(result, this.ascii ? StandardCharsets.US_ASCII : StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public void write(final Writer out) throws IOException {
+		this.write(out, 0, this.length());
+	}
+
+	@Override
+	public void write(final Writer out, final int offset, final int length) throws IOException {
+		Objects.checkFromIndexSize(offset, length, this.length());
+		final char[] buffer = new char[Math.min(length, COPY_SIZE)];
+		for (int j=offset; j<offset + length; j+=buffer.length) {
+			final int n = Math.min(buffer.length, offset + length - j);
+			this.getChars(j, j + n, buffer, 0);
+			out.write(buffer, 0, n);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package org.ahmadsoft.ropes.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ahmadsoft.ropes.CharIterator;
+import org.ahmadsoft.ropes.Rope;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A rope backed by a prefix of a character array that may be shared
+ * with longer ropes.
+ * <p>
+ * All ropes over the same array share a watermark recording how much
+ * of it has been claimed. A rope whose length equals the watermark owns
+ * the free space after it, and appending to it writes the new
+ * characters in place; the rope itself is unaffected, since it never
+ * reads past its own length. Appending to any other rope, or beyond the
+ * capacity of the array, copies instead. The watermark is claimed
+ * atomically, so ropes may be appended to from several threads.
+ */
+final class FlatCharArrayRope extends FlatRope {
+
+	private final char[] chars;
+	private final int length;
+	private final AtomicInteger claimed;
+
+	private FlatCharArrayRope(final char[] chars, final int length, final AtomicInteger claimed) {
+		this.chars = chars;
+		this.length = length;
+		this.claimed = claimed;
+	}
+
+	/**
+	 * Returns the concatenation of two ropes as a new leaf, leaving room
+	 * to append in place up to the specified capacity.
+	 * @param left the first rope.
+	 * @param right the second rope.
+	 * @param capacity the minimum capacity of the new leaf.
+	 * @return a new leaf.
+	 */
+	static FlatCharArrayRope concat(final Rope left, final Rope right, final int capacity) {
+		final int length = left.length() + right.length();
+		final char[] chars = new char[Math.max(length, capacity)];
+		left.getChars(0, left.length(), chars, 0);
+		right.getChars(0, right.length(), chars, left.length());
+		return new FlatCharArrayRope(chars, length, new AtomicInteger(length));
+	}
+
+	/**
+	 * Returns the concatenation of this rope and the specified suffix,
+	 * extending the shared array in place if this rope owns its free
+	 * space and the suffix fits.
+	 * @param suffix the rope to append.
+	 * @return a new leaf.
+	 */
+	FlatCharArrayRope append(final Rope suffix) {
+		final int newLength = this.length + suffix.length();
+		if (newLength <= this.chars.length && this.claimed.compareAndSet(this.length, newLength)) {
+			suffix.getChars(0, suffix.length(), this.chars, this.length);
+			return new FlatCharArrayRope(this.chars, newLength, this.claimed);
+		}
+		return concat(this, suffix, this.chars.length);
+	}
+
+	@Override
+	CharBuffer charBuffer(final int start, final int end) {
+		Objects.checkFromToIndex(start, end, this.length);
+		return CharBuffer.wrap(this.chars, start, end - start).slice().asReadOnlyBuffer();
+	}
+
+	@Override
+	public char charAt(final int index) {
+		Objects.checkIndex(index, this.length);
+		return this.chars[index];
+	}
+
+	@Override
+	public byte depth() {
+		return 0;
+	}
+
+	@Override
+	public void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+		Objects.checkFromToIndex(srcBegin, srcEnd, this.length);
+		System.arraycopy(this.chars, srcBegin, dst, dstBegin, srcEnd - srcBegin);
+	}
+
+	@Override
+	public int indexOf(final char ch) {
+		return this.indexOf(ch, 0);
+	}
+
+	@Override
+	public int indexOf(final char ch, final int fromIndex) {
+		if (fromIndex < 0 || fromIndex >= this.length)
+			throw new IndexOutOfBoundsException("Rope index out of range: " + fromIndex);
+		for (int j=fromIndex; j<this.length; ++j)
+			if (this.chars[j] == ch)
+				return j;
+		return -1;
+	}
+
+	@Override
+	public CharIterator iterator(final int start) {
+		if (start < 0 || start > this.length())
+			throw new IndexOutOfBoundsException("Rope index out of range: " + start);
+		return new CharIterator() {
+			int current = start;
+			@Override
+			public boolean hasNext() {
+				return this.current < FlatCharArrayRope.this.length;
+			}
+
+			@Override
+			public char nextChar() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return FlatCharArrayRope.this.chars[this.current++];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Rope iterator is read-only.");
+			}
+		};
+	}
+
+	@Override
+	public int length() {
+		return this.length;
+	}
+
+	@Override
+	public @NotNull Rope reverse() {
+		return new ReverseRope(this);
+	}
+
+	@Override
+	public CharIterator reverseIterator(final int start) {
+		if (start < 0 || start > this.length())
+			throw new IndexOutOfBoundsException("Rope index out of range: " + start);
+		return new CharIterator() {
+			int current = FlatCharArrayRope.this.length - start;
+			@Override
+			public boolean hasNext() {
+				return this.current > 0;
+			}
+
+			@Override
+			public char nextChar() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return FlatCharArrayRope.this.chars[--this.current];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Rope iterator is read-only.");
+			}
+		};
+	}
+
+	@Override
+	public @NotNull Rope subSequence(final int start, final int end) {
+		Objects.checkFromToIndex(start, end, this.length);
+		if (start == 0 && end == this.length)
+			return this;
+		if (start == 0)
+			return new FlatCharArrayRope(this.chars, end, this.claimed);
+		if (end - start < 16) {
+			return new FlatStringRope(this.toString(start, end-start));
+		} else {
+			return new SubstringRope(this, start, end-start);
+		}
+	}
+
+	@Override
+	@NotNull
+	public String toString() {
+		return new String(this.chars, 0, this.length);
+	}
+
+	public String toString(final int offset, final int length) {
+		Objects.checkFromIndexSize(offset, length, this.length);
+		return new String(this.chars, offset, length);
+	}
+
+	@Override
+	public void write(final Writer out) throws IOException {
+		this.write(out, 0, this.length());
+	}
+
+	@Override
+	public void write(final Writer out, final int offset, final int length) throws IOException {
+		Objects.checkFromIndexSize(offset, length, this.length);
+		out.write(this.chars, offset, length);
+	}
+}
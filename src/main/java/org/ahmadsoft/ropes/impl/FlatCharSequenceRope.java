@@ -24,6 +24,7 @@ package org.ahmadsoft.ropes.impl;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.regex.Matcher;
@@ -55,6 +56,11 @@ public final class FlatCharSequenceRope extends FlatRope {
 		this.sequence = Objects.requireNonNull(sequence);
 	}
 
+	@Override
+	CharBuffer charBuffer(final int start, final int end) {
+		return CharBuffer.wrap(this.sequence, start, end).slice();
+	}
+
 	@Override
 	public char charAt(final int index) {
 		return this.sequence.charAt(index);
@@ -65,6 +71,20 @@ public final class FlatCharSequenceRope extends FlatRope {
 		return 0;
 	}
 
+	@Override
+	public void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+		Objects.checkFromToIndex(srcBegin, srcEnd, this.length());
+		Objects.checkFromIndexSize(dstBegin, srcEnd - srcBegin, dst.length);
+		if (this.sequence instanceof StringBuilder builder) {
+			builder.getChars(srcBegin, srcEnd, dst, dstBegin);
+		} else if (this.sequence instanceof StringBuffer buffer) {
+			buffer.getChars(srcBegin, srcEnd, dst, dstBegin);
+		} else {
+			for (int j=srcBegin; j<srcEnd; ++j)
+				dst[dstBegin + j - srcBegin] = this.sequence.charAt(j);
+		}
+	}
+
 	@Override
 	public CharIterator iterator(final int start) {
 		if (start < 0 || start > this.length())
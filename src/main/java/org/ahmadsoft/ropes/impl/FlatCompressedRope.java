@@ -0,0 +1,329 @@
+package org.ahmadsoft.ropes.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.ref.WeakReference;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.ahmadsoft.ropes.CharIterator;
+import org.ahmadsoft.ropes.Rope;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A rope whose characters are stored deflated, for keeping rarely used
+ * text in less heap.
+ * <p>
+ * Long leaves are compressed as a tree of blocks of at most
+ * {@value #BLOCK_SIZE} characters, so an access inflates one block
+ * rather than the whole leaf. The characters are inflated on access.
+ * Each thread keeps the most recently inflated blocks in a small cache,
+ * so runs of accesses to the same block inflate it only once; iterators
+ * hold on to the inflated text for as long as they are in use.
+ */
+public final class FlatCompressedRope extends FlatRope {
+
+	/**
+	 * The minimum length of a leaf worth compressing.
+	 */
+	private static final int MIN_LENGTH = 1024;
+
+	/**
+	 * The maximum number of characters compressed as one block.
+	 */
+	private static final int BLOCK_SIZE = 1 << 14;
+
+	/**
+	 * The number of inflated blocks cached per thread.
+	 */
+	private static final int CACHE_SIZE = 4;
+
+	private static final ThreadLocal<Cache> CACHE = ThreadLocal.withInitial(Cache::new);
+
+	private final byte[] compressed;
+	private final int length;
+	/**
+	 * Whether the characters were deflated as Latin-1, one byte each,
+	 * rather than as UTF-16.
+	 */
+	private final boolean latin1;
+
+	private FlatCompressedRope(final byte[] compressed, final int length, final boolean latin1) {
+		this.compressed = compressed;
+		this.length = length;
+		this.latin1 = latin1;
+	}
+
+	/**
+	 * Returns a rope equal to the specified one with its long leaves
+	 * compressed. Leaves longer than a block are split into blocks first.
+	 * Blocks that do not shrink by at least a quarter are kept
+	 * uncompressed, and memory-mapped leaves are kept as they are;
+	 * subtrees are shared as in the original rope.
+	 * @param rope the rope.
+	 * @return the compressed rope.
+	 */
+	@ApiStatus.Internal
+	public static Rope compress(final Rope rope) {
+		return compress(rope, new IdentityHashMap<>());
+	}
+
+	private static Rope compress(final Rope node, final IdentityHashMap<Rope, Rope> done) {
+		Rope result = done.get(node);
+		if (result != null)
+			return result;
+		if (node instanceof ConcatenationRope concatenation) {
+			final Rope left = compress(concatenation.getLeft(), done);
+			final Rope right = compress(concatenation.getRight(), done);
+			result = left == concatenation.getLeft() && right == concatenation.getRight()
+					? node
+					: new ConcatenationRope(left, right);
+		} else if (node instanceof SubstringRope substring) {
+			final Rope base = compress(substring.getRope(), done);
+			if (base == substring.getRope()) {
+				result = node;
+			} else {
+				// a leaf split into blocks is no longer flat
+				result = base instanceof FlatRope flat
+						? new SubstringRope(flat, substring.getOffset(), substring.length())
+						: base.subSequence(substring.getOffset(), substring.getOffset() + substring.length());
+			}
+		} else if (node instanceof ReverseRope reverse) {
+			final Rope base = compress(reverse.getRope(), done);
+			result = base == reverse.getRope() ? node : new ReverseRope(base);
+		} else if (node instanceof FlatRope flat && node.length() >= MIN_LENGTH
+				&& !(node instanceof FlatCompressedRope) && !(node instanceof FlatByteBufferRope)) {
+			result = compressBlocks(flat);
+		} else {
+			result = node;
+		}
+		done.put(node, result);
+		return result;
+	}
+
+	/**
+	 * Returns a leaf compressed block by block, as a balanced tree if it
+	 * holds more than one block.
+	 */
+	private static Rope compressBlocks(final FlatRope leaf) {
+		if (leaf.length() <= BLOCK_SIZE) {
+			final FlatRope block = tryCompress(leaf.toString());
+			return block == null ? leaf : block;
+		}
+		final String text = leaf.toString();
+		final ArrayList<Rope> blocks = new ArrayList<>();
+		for (int start=0; start<text.length(); start+=BLOCK_SIZE) {
+			final String chars = text.substring(start, Math.min(start + BLOCK_SIZE, text.length()));
+			final FlatRope block = tryCompress(chars);
+			blocks.add(block == null ? new FlatStringRope(chars) : block);
+		}
+		return RopeUtilities.merge(blocks, 0, blocks.size());
+	}
+
+	/**
+	 * Returns a compressed block, or <code>null</code> if the text does
+	 * not compress well.
+	 */
+	private static FlatCompressedRope tryCompress(final String text) {
+		boolean latin1 = true;
+		for (int j=0; j<text.length() && latin1; ++j)
+			latin1 = text.charAt(j) <= 0xFF;
+		final byte[] raw = text.getBytes(latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_16BE);
+
+		final Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(raw);
+			deflater.finish();
+			final byte[] buffer = new byte[raw.length - raw.length / 4];
+			int n = 0;
+			while (!deflater.finished() && n < buffer.length)
+				n += deflater.deflate(buffer, n, buffer.length - n);
+			if (!deflater.finished())
+				return null;
+			return new FlatCompressedRope(Arrays.copyOf(buffer, n), text.length(), latin1);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Returns the characters of this rope, inflating them unless they are
+	 * in this thread's cache.
+	 */
+	private String content() {
+		final Cache cache = CACHE.get();
+		String text = cache.get(this);
+		if (text == null) {
+			text = this.inflate();
+			cache.put(this, text);
+		}
+		return text;
+	}
+
+	private String inflate() {
+		final byte[] raw = new byte[this.latin1 ? this.length : 2 * this.length];
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(this.compressed);
+			int n = 0;
+			while (n < raw.length) {
+				final int count = inflater.inflate(raw, n, raw.length - n);
+				if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+					throw new IllegalStateException("Truncated compressed rope.");
+				n += count;
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("Corrupt compressed rope.", e);
+		} finally {
+			inflater.end();
+		}
+		return new String(raw, this.latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_16BE);
+	}
+
+	/**
+	 * Returns this rope's characters as a string rope, to delegate to.
+	 */
+	private FlatStringRope expanded() {
+		return new FlatStringRope(this.content());
+	}
+
+	@Override
+	CharBuffer charBuffer(final int start, final int end) {
+		return CharBuffer.wrap(this.content(), start, end).slice();
+	}
+
+	@Override
+	int computeHashCode() {
+		return this.content().hashCode();
+	}
+
+	@Override
+	public char charAt(final int index) {
+		return this.content().charAt(index);
+	}
+
+	@Override
+	public byte depth() {
+		return 0;
+	}
+
+	@Override
+	public void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+		Objects.checkFromToIndex(srcBegin, srcEnd, this.length);
+		this.content().getChars(srcBegin, srcEnd, dst, dstBegin);
+	}
+
+	@Override
+	public int indexOf(final char ch) {
+		return this.content().indexOf(ch);
+	}
+
+	@Override
+	public int indexOf(final char ch, final int fromIndex) {
+		if (fromIndex < 0 || fromIndex >= this.length())
+			throw new IndexOutOfBoundsException("Rope index out of range: " + fromIndex);
+		return this.content().indexOf(ch, fromIndex);
+	}
+
+	@Override
+	public CharIterator iterator(final int start) {
+		return this.expanded().iterator(start);
+	}
+
+	@Override
+	public int length() {
+		return this.length;
+	}
+
+	@Override
+	public @NotNull Rope reverse() {
+		return new ReverseRope(this);
+	}
+
+	@Override
+	public CharIterator reverseIterator(final int start) {
+		return this.expanded().reverseIterator(start);
+	}
+
+	@Override
+	public @NotNull Rope subSequence(final int start, final int end) {
+		Objects.checkFromToIndex(start, end, this.length);
+		if (start == 0 && end == this.length)
+			return this;
+		if (end - start < 16)
+			return new FlatStringRope(this.content().substring(start, end));
+		return new SubstringRope(this, start, end - start);
+	}
+
+	@Override
+	@NotNull
+	public String toString() {
+		return this.content();
+	}
+
+	public String toString(final int offset, final int length) {
+		Objects.checkFromIndexSize(offset, length, this.length);
+		return this.content().substring(offset, offset + length);
+	}
+
+	@Override
+	public void write(final Writer out) throws IOException {
+		out.write(this.content());
+	}
+
+	@Override
+	public void write(final Writer out, final int offset, final int length) throws IOException {
+		Objects.checkFromIndexSize(offset, length, this.length);
+		out.write(this.content(), offset, length);
+	}
+
+	/**
+	 * The most recently inflated blocks of a thread, most recent first.
+	 * Blocks are held weakly, so the cache does not keep ropes alive, and
+	 * the texts are bounded by the block size, so a thread holds at most
+	 * {@value #CACHE_SIZE} blocks' worth of characters.
+	 */
+	private static final class Cache {
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private final WeakReference<FlatCompressedRope>[] ropes = new WeakReference[CACHE_SIZE];
+		private final String[] texts = new String[CACHE_SIZE];
+
+		String get(final FlatCompressedRope rope) {
+			for (int j=0; j<CACHE_SIZE; ++j) {
+				if (this.ropes[j] != null && this.ropes[j].get() == rope) {
+					final String text = this.texts[j];
+					this.moveToFront(j, this.ropes[j], text);
+					return text;
+				}
+			}
+			return null;
+		}
+
+		void put(final FlatCompressedRope rope, final String text) {
+			// reuse the slot of a collected block before evicting a live one
+			int j = CACHE_SIZE - 1;
+			for (int k=0; k<CACHE_SIZE; ++k) {
+				if (this.ropes[k] == null || this.ropes[k].get() == null) {
+					j = k;
+					break;
+				}
+			}
+			this.moveToFront(j, new WeakReference<>(rope), text);
+		}
+
+		private void moveToFront(final int j, final WeakReference<FlatCompressedRope> rope, final String text) {
+			System.arraycopy(this.ropes, 0, this.ropes, 1, j);
+			System.arraycopy(this.texts, 0, this.texts, 1, j);
+			this.ropes[0] = rope;
+			this.texts[0] = text;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package org.ahmadsoft.ropes.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import org.ahmadsoft.ropes.CharIterator;
+import org.ahmadsoft.ropes.Rope;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A rope backed by an array of ISO-8859-1 (Latin-1) bytes, one per
+ * character.
+ * <p>
+ * Leaves of this type hold half as much memory as a <code>char[]</code>
+ * and can be scanned and written byte-wise. Content outside Latin-1 is
+ * never stored here: concatenating with such content produces an
+ * ordinary UTF-16 leaf.
+ */
+public final class FlatLatin1Rope extends FlatRope {
+
+	private final byte[] bytes;
+
+	/**
+	 * Constructs a new rope that takes ownership of the specified array.
+	 * @param bytes the Latin-1 bytes.
+	 */
+	FlatLatin1Rope(final byte[] bytes) {
+		this.bytes = Objects.requireNonNull(bytes);
+	}
+
+	/**
+	 * Constructs a new rope from a range of Latin-1 bytes. The bytes are
+	 * copied.
+	 * @param bytes the Latin-1 bytes.
+	 * @param offset the offset in the array.
+	 * @param length the number of bytes.
+	 */
+	public FlatLatin1Rope(final byte[] bytes, final int offset, final int length) {
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		this.bytes = Arrays.copyOfRange(bytes, offset, offset + length);
+	}
+
+	/**
+	 * Returns a Latin-1 leaf holding the specified sequence, or
+	 * <code>null</code> if it contains a character outside Latin-1.
+	 * @param sequence the sequence.
+	 * @return a Latin-1 leaf, or <code>null</code>.
+	 */
+	@ApiStatus.Internal
+	public static FlatLatin1Rope tryCopyOf(final CharSequence sequence) {
+		final byte[] bytes = new byte[sequence.length()];
+		for (int j=0; j<bytes.length; ++j) {
+			final char c = sequence.charAt(j);
+			if (c > 0xFF)
+				return null;
+			bytes[j] = (byte) c;
+		}
+		return new FlatLatin1Rope(bytes);
+	}
+
+	/**
+	 * Returns the concatenation of this rope and another Latin-1 leaf.
+	 * @param other the rope to append.
+	 * @return a new Latin-1 leaf.
+	 */
+	FlatLatin1Rope concat(final FlatLatin1Rope other) {
+		final byte[] result = Arrays.copyOf(this.bytes, this.bytes.length + other.bytes.length);
+		System.arraycopy(other.bytes, 0, result, this.bytes.length, other.bytes.length);
+		return new FlatLatin1Rope(result);
+	}
+
+	/**
+	 * Copies a range of the underlying bytes into a destination array.
+	 * @param srcBegin the start offset, inclusive.
+	 * @param srcEnd the end offset, exclusive.
+	 * @param dst the destination array.
+	 * @param dstBegin the start offset in the destination array.
+	 */
+	void getBytes(final int srcBegin, final int srcEnd, final byte[] dst, final int dstBegin) {
+		Objects.checkFromToIndex(srcBegin, srcEnd, this.bytes.length);
+		System.arraycopy(this.bytes, srcBegin, dst, dstBegin, srcEnd - srcBegin);
+	}
+
+	@Override
+	ByteBuffer latin1Buffer(final int start, final int end) {
+		Objects.checkFromToIndex(start, end, this.bytes.length);
+		return ByteBuffer.wrap(this.bytes, start, end - start).slice().asReadOnlyBuffer();
+	}
+
+	@Override
+	int computeHashCode() {
+		int h = 0;
+		for (final byte b : this.bytes)
+			h = 31 * h + (b & 0xFF);
+		return h;
+	}
+
+	@Override
+	public char charAt(final int index) {
+		return (char) (this.bytes[index] & 0xFF);
+	}
+
+	@Override
+	public byte depth() {
+		return 0;
+	}
+
+	@Override
+	public void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+		Objects.checkFromToIndex(srcBegin, srcEnd, this.length());
+		Objects.checkFromIndexSize(dstBegin, srcEnd - srcBegin, dst.length);
+		for (int j=srcBegin; j<srcEnd; ++j)
+			dst[dstBegin + j - srcBegin] = (char) (this.bytes[j] & 0xFF);
+	}
+
+	@Override
+	public int indexOf(final char ch) {
+		return ch > 0xFF ? -1 : this.indexOfByte((byte) ch, 0);
+	}
+
+	@Override
+	public int indexOf(final char ch, final int fromIndex) {
+		if (fromIndex < 0 || fromIndex >= this.length())
+			throw new IndexOutOfBoundsException("Rope index out of range: " + fromIndex);
+		return ch > 0xFF ? -1 : this.indexOfByte((byte) ch, fromIndex);
+	}
+
+	private int indexOfByte(final byte b, final int fromIndex) {
+		for (int j=fromIndex; j<this.bytes.length; ++j)
+			if (this.bytes[j] == b)
+				return j;
+		return -1;
+	}
+
+	@Override
+	public CharIterator iterator(final int start) {
+		if (start < 0 || start > this.length())
+			throw new IndexOutOfBoundsException("Rope index out of range: " + start);
+		return new CharIterator() {
+			int current = start;
+			@Override
+			public boolean hasNext() {
+				return this.current < FlatLatin1Rope.this.bytes.length;
+			}
+
+			@Override
+			public char nextChar() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return (char) (FlatLatin1Rope.this.bytes[this.current++] & 0xFF);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Rope iterator is read-only.");
+			}
+		};
+	}
+
+	@Override
+	public int length() {
+		return this.bytes.length;
+	}
+
+	@Override
+	public @NotNull Rope reverse() {
+		return new ReverseRope(this);
+	}
+
+	@Override
+	public CharIterator reverseIterator(final int start) {
+		if (start < 0 || start > this.length())
+			throw new IndexOutOfBoundsException("Rope index out of range: " + start);
+		return new CharIterator() {
+			int current = FlatLatin1Rope.this.bytes.length - start;
+			@Override
+			public boolean hasNext() {
+				return this.current > 0;
+			}
+
+			@Override
+			public char nextChar() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return (char) (FlatLatin1Rope.this.bytes[--this.current] & 0xFF);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Rope iterator is read-only.");
+			}
+		};
+	}
+
+	@Override
+	public @NotNull Rope subSequence(final int start, final int end) {
+		Objects.checkFromToIndex(start, end, this.length());
+		if (start == 0 && end == this.length())
+			return this;
+		if (end - start < 16) {
+			return new FlatLatin1Rope(this.bytes, start, end-start);
+		} else {
+			return new SubstringRope(this, start, end-start);
+		}
+	}
+
+	@Override
+	@NotNull
+	public String toString() {
+		return new String(this.bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	public String toString(final int offset, final int length) {
+		Objects.checkFromIndexSize(offset, length, this.bytes.length);
+		return new String(this.bytes, offset, length, StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public void write(final Writer out) throws IOException {
+		this.write(out, 0, this.length());
+	}
+
+	@Override
+	public void write(final Writer out, final int offset, final int length) throws IOException {
+		out.write(this.toString(offset, length));
+	}
+}
@@ -22,11 +22,15 @@
  */
 package org.ahmadsoft.ropes.impl;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
 /**
  * A rope that is directly backed by a data source.
  * @author Amin Ahmad
  */
-sealed abstract class FlatRope extends AbstractRope permits FlatStringRope, FlatCharSequenceRope {
+sealed abstract class FlatRope extends AbstractRope permits FlatStringRope, FlatCharSequenceRope, FlatLatin1Rope, FlatCharArrayRope,
+		FlatByteBufferRope, FlatCompressedRope {
 	/**
 	 * Returns a <code>String</code> representation of a range
 	 * in this rope.
@@ -36,4 +40,26 @@ sealed abstract class FlatRope extends AbstractRope permits FlatStringRope, Flat
 	 * in this rope.
 	 */
 	public abstract String toString(int offset, int length);
+
+	/**
+	 * Returns a read-only buffer over a range of this rope, sharing its
+	 * storage where possible.
+	 * @param start the start offset, inclusive.
+	 * @param end the end offset, exclusive.
+	 * @return a buffer over the range.
+	 */
+	CharBuffer charBuffer(final int start, final int end) {
+		return CharBuffer.wrap(this, start, end).slice();
+	}
+
+	/**
+	 * Returns a read-only buffer over a range of this rope's storage if
+	 * it is held as Latin-1 bytes, one per character.
+	 * @param start the start offset, inclusive.
+	 * @param end the end offset, exclusive.
+	 * @return a buffer over the range, or <code>null</code>.
+	 */
+	ByteBuffer latin1Buffer(final int start, final int end) {
+		return null;
+	}
 }
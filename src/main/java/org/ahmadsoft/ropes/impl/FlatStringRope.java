@@ -24,6 +24,7 @@ package org.ahmadsoft.ropes.impl;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.CharBuffer;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.Objects;
@@ -63,6 +64,16 @@ public final class FlatStringRope extends FlatRope {
 		this.string = text.substring(offset, offset + length);
 	}
 
+	@Override
+	int computeHashCode() {
+		return this.string.hashCode();
+	}
+
+	@Override
+	CharBuffer charBuffer(final int start, final int end) {
+		return CharBuffer.wrap(this.string, start, end).slice();
+	}
+
 	@Override
 	public char charAt(final int index) {
 		return this.string.charAt(index);
@@ -73,6 +84,12 @@ public final class FlatStringRope extends FlatRope {
 		return 0;
 	}
 
+	@Override
+	public void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+		Objects.checkFromToIndex(srcBegin, srcEnd, this.length());
+		this.string.getChars(srcBegin, srcEnd, dst, dstBegin);
+	}
+
 	/*
 	 * Implementation Note: This is a reproduction of the AbstractRope
 	 * indexOf implementation. Calls to charAt have been replaced
@@ -0,0 +1,183 @@
+package org.ahmadsoft.ropes.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.ahmadsoft.ropes.Rope;
+
+/**
+ * Rebalancing of very large ropes on the common fork-join pool.
+ * <p>
+ * The tree walk that collects the leaves is split across large
+ * subtrees, and packing and merging the leaves are split across ranges
+ * of the resulting list. Below a size threshold each task falls back
+ * to the sequential algorithm in {@link RopeUtilities}.
+ */
+final class ParallelRebalance {
+
+	/**
+	 * Ropes at least this long are rebalanced in parallel.
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 20;
+
+	/**
+	 * Subtrees shorter than this are walked sequentially.
+	 */
+	private static final int SEQUENTIAL_LENGTH = 1 << 16;
+
+	/**
+	 * Ranges of fewer leaves than this are merged sequentially.
+	 */
+	private static final int SEQUENTIAL_LEAVES = 1 << 10;
+
+	private ParallelRebalance() {}
+
+	/**
+	 * Rebalance a rope in parallel.
+	 * @param r the rope to rebalance.
+	 * @param targetLeafLength the maximum length of a packed leaf, or
+	 * zero to keep the leaves as they are.
+	 * @return a rebalanced copy of the specified rope.
+	 */
+	static Rope rebalance(final Rope r, final int targetLeafLength) {
+		final ForkJoinPool pool = ForkJoinPool.commonPool();
+		final ArrayList<Rope> leafNodes = pool.invoke(new CollectLeaves(r, targetLeafLength));
+		if (leafNodes.isEmpty())
+			return Rope.EMPTY;
+		return pool.invoke(new Merge(leafNodes, 0, leafNodes.size()));
+	}
+
+	/**
+	 * Append leaves to a list, packing the leaves on either side of the
+	 * join if they fit within the target length together.
+	 */
+	private static void append(final ArrayList<Rope> result, final List<Rope> leafNodes, final int targetLeafLength) {
+		int from = 0;
+		if (targetLeafLength > 0 && !result.isEmpty() && !leafNodes.isEmpty()) {
+			final Rope last = result.get(result.size() - 1), first = leafNodes.get(0);
+			if (last.length() + first.length() <= targetLeafLength) {
+				result.set(result.size() - 1, new FlatStringRope(RopeUtilities.flatten(last, first)));
+				from = 1;
+			}
+		}
+		result.addAll(leafNodes.subList(from, leafNodes.size()));
+	}
+
+	private static final class CollectLeaves extends RecursiveTask<ArrayList<Rope>> {
+
+		private final Rope rope;
+		private final int targetLeafLength;
+
+		CollectLeaves(final Rope rope, final int targetLeafLength) {
+			this.rope = rope;
+			this.targetLeafLength = targetLeafLength;
+		}
+
+		@Override
+		protected ArrayList<Rope> compute() {
+			// Walk the tree iteratively, so that degenerate trees do not
+			// overflow the stack. Where both sides of a concatenation are
+			// large, the smaller is forked and the larger walked here,
+			// keeping the nesting of joins logarithmic.
+			final ArrayList<Object> parts = new ArrayList<>();
+			final ArrayDeque<Object> toExamine = new ArrayDeque<>();
+			toExamine.push(this.rope);
+			while (!toExamine.isEmpty()) {
+				final Object x = toExamine.pop();
+				if (x instanceof ConcatenationRope node) {
+					final Rope left = node.getLeft(), right = node.getRight();
+					if (left.length() < SEQUENTIAL_LENGTH || right.length() < SEQUENTIAL_LENGTH) {
+						toExamine.push(right);
+						toExamine.push(left);
+					} else if (left.length() < right.length()) {
+						parts.add(new CollectLeaves(left, this.targetLeafLength).fork());
+						toExamine.push(right);
+					} else {
+						toExamine.push(new CollectLeaves(right, this.targetLeafLength).fork());
+						toExamine.push(left);
+					}
+				} else {
+					// a leaf, or a forked task for a subtree
+					parts.add(x);
+				}
+			}
+
+			final ArrayList<Rope> result = new ArrayList<>();
+			final ArrayList<Rope> run = new ArrayList<>();
+			for (final Object part: parts) {
+				if (part instanceof CollectLeaves task) {
+					append(result, this.pack(run), this.targetLeafLength);
+					run.clear();
+					append(result, task.join(), this.targetLeafLength);
+				} else {
+					run.add((Rope) part);
+				}
+			}
+			append(result, this.pack(run), this.targetLeafLength);
+			return result;
+		}
+
+		private List<Rope> pack(final ArrayList<Rope> run) {
+			if (this.targetLeafLength <= 0 || run.isEmpty())
+				return run;
+			return new Pack(run, 0, run.size(), this.targetLeafLength).compute();
+		}
+	}
+
+	private static final class Pack extends RecursiveTask<ArrayList<Rope>> {
+
+		private final List<Rope> leafNodes;
+		private final int start;
+		private final int end;
+		private final int targetLeafLength;
+
+		Pack(final List<Rope> leafNodes, final int start, final int end, final int targetLeafLength) {
+			this.leafNodes = leafNodes;
+			this.start = start;
+			this.end = end;
+			this.targetLeafLength = targetLeafLength;
+		}
+
+		@Override
+		protected ArrayList<Rope> compute() {
+			final int range = this.end - this.start;
+			if (range <= SEQUENTIAL_LEAVES)
+				return RopeUtilities.coalesce(this.leafNodes.subList(this.start, this.end), this.targetLeafLength);
+			final int middle = this.start + (range / 2);
+			final Pack left = new Pack(this.leafNodes, this.start, middle, this.targetLeafLength);
+			left.fork();
+			final ArrayList<Rope> right = new Pack(this.leafNodes, middle, this.end, this.targetLeafLength).compute();
+			final ArrayList<Rope> result = left.join();
+			append(result, right, this.targetLeafLength);
+			return result;
+		}
+	}
+
+	private static final class Merge extends RecursiveTask<Rope> {
+
+		private final ArrayList<Rope> leafNodes;
+		private final int start;
+		private final int end;
+
+		Merge(final ArrayList<Rope> leafNodes, final int start, final int end) {
+			this.leafNodes = leafNodes;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected Rope compute() {
+			final int range = this.end - this.start;
+			if (range <= SEQUENTIAL_LEAVES)
+				return RopeUtilities.merge(this.leafNodes, this.start, this.end);
+			final int middle = this.start + (range / 2);
+			final Merge left = new Merge(this.leafNodes, this.start, middle);
+			left.fork();
+			final Rope right = new Merge(this.leafNodes, middle, this.end).compute();
+			return new ConcatenationRope(left.join(), right);
+		}
+	}
+}
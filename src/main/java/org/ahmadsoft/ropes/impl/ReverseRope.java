@@ -24,7 +24,7 @@ package org.ahmadsoft.ropes.impl;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.util.NoSuchElementException;
+import java.util.Objects;
 
 import org.ahmadsoft.ropes.CharIterator;
 import org.ahmadsoft.ropes.Rope;
@@ -37,6 +37,11 @@ import org.jetbrains.annotations.NotNull;
  */
 public final class ReverseRope extends AbstractRope {
 
+	/**
+	 * The number of characters copied at a time by {@link #write(Writer, int, int)}.
+	 */
+	private static final int COPY_SIZE = 8192;
+
 	private final Rope rope;
 
 	/**
@@ -62,28 +67,31 @@ public final class ReverseRope extends AbstractRope {
 		return RopeUtilities.depth(this.rope);
 	}
 
+	@Override
+	public void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+		Objects.checkFromToIndex(srcBegin, srcEnd, this.length());
+		// copy the mirrored range forwards, then reverse it in place
+		this.rope.getChars(this.length() - srcEnd, this.length() - srcBegin, dst, dstBegin);
+		for (int i=dstBegin, j=dstBegin + srcEnd - srcBegin - 1; i<j; ++i, --j) {
+			final char c = dst[i];
+			dst[i] = dst[j];
+			dst[j] = c;
+		}
+	}
+
+	/**
+	 * Returns the rope this rope reverses.
+	 * @return the underlying rope.
+	 */
+	Rope getRope() {
+		return this.rope;
+	}
+
 	@Override
 	public CharIterator iterator(final int start) {
 		if (start < 0 || start > this.length())
 			throw new IndexOutOfBoundsException("Rope index out of range: " + start);
-		return new CharIterator() {
-			int current = start;
-			@Override
-			public boolean hasNext() {
-				return this.current < ReverseRope.this.length();
-			}
-
-			@Override
-			public char nextChar() {
-				if (!hasNext()) throw new NoSuchElementException();
-				return ReverseRope.this.charAt(this.current++);
-			}
-
-			@Override
-			public void remove() {
-				throw new UnsupportedOperationException("Rope iterator is read-only.");
-			}
-		};
+		return this.rope.reverseIterator(start);
 	}
 
 	@Override
@@ -96,27 +104,11 @@ public final class ReverseRope extends AbstractRope {
 		return this.rope;
 	}
 
+	@Override
 	public CharIterator reverseIterator(final int start) {
 		if (start < 0 || start > this.length())
 			throw new IndexOutOfBoundsException("Rope index out of range: " + start);
-		return new CharIterator() {
-			int current = ReverseRope.this.length() - start;
-			@Override
-			public boolean hasNext() {
-				return this.current > 0;
-			}
-
-			@Override
-			public char nextChar() {
-				if (!hasNext()) throw new NoSuchElementException();
-				return ReverseRope.this.charAt(--this.current);
-			}
-
-			@Override
-			public void remove() {
-				throw new UnsupportedOperationException("Rope iterator is read-only.");
-			}
-		};
+		return this.rope.iterator(start);
 	}
 
 	@Override
@@ -133,9 +125,12 @@ public final class ReverseRope extends AbstractRope {
 
 	@Override
 	public void write(final Writer out, final int offset, final int length) throws IOException {
-		if (offset < 0 || offset + length > this.length())
-			throw new IndexOutOfBoundsException("Rope index out of bounds:" + (offset < 0 ? offset: offset + length));
-		for (int j=offset; j<offset + length; ++j)
-			out.write(this.charAt(j));
+		Objects.checkFromIndexSize(offset, length, this.length());
+		final char[] buffer = new char[Math.min(length, COPY_SIZE)];
+		for (int j=offset; j<offset + length; j+=buffer.length) {
+			final int n = Math.min(buffer.length, offset + length - j);
+			this.getChars(j, j + n, buffer, 0);
+			out.write(buffer, 0, n);
+		}
 	}
 }
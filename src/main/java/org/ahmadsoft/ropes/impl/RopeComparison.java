@@ -0,0 +1,147 @@
+package org.ahmadsoft.ropes.impl;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import org.ahmadsoft.ropes.Rope;
+
+/**
+ * Finds the first difference between two ropes by walking both trees
+ * side by side.
+ * <p>
+ * Whenever the walks reach the same subtree at the same position, or
+ * ranges of the same leaf at the same offset, the whole range is
+ * skipped without looking at its characters. Versions of a rope made by
+ * editing share everything outside the edited regions, so comparing
+ * them costs time in proportion to those regions. Other ranges are
+ * compared a block at a time with {@link Arrays#mismatch(char[], int, int, char[], int, int)}.
+ */
+final class RopeComparison {
+
+	/**
+	 * The number of characters compared at a time.
+	 */
+	private static final int BLOCK_SIZE = 1024;
+
+	private RopeComparison() {
+	}
+
+	/**
+	 * Returns the index of the first character at which two ropes differ.
+	 * @param a the first rope.
+	 * @param b the second rope.
+	 * @return the index of the first difference, or -1 if the shorter
+	 * rope is a prefix of the longer one.
+	 */
+	static int mismatch(final Rope a, final Rope b) {
+		final int length = Math.min(a.length(), b.length());
+		final ArrayDeque<Rope> left = new ArrayDeque<>(), right = new ArrayDeque<>();
+		left.push(a);
+		right.push(b);
+		// the offsets into the leaves on top of the stacks
+		int leftOffset = 0, rightOffset = 0;
+		char[] x = null, y = null;
+		for (int position=0; position<length; ) {
+			final Rope l = left.peek(), r = right.peek();
+			if (l == r && leftOffset == rightOffset) {
+				position += l.length() - leftOffset;
+				left.pop();
+				right.pop();
+				leftOffset = rightOffset = 0;
+				continue;
+			}
+			// split the longer concatenation, so that subtrees shared at the
+			// same position meet on top of the stacks
+			final boolean splitLeft = l instanceof ConcatenationRope
+					&& (!(r instanceof ConcatenationRope) || l.length() >= r.length());
+			final boolean splitRight = r instanceof ConcatenationRope
+					&& (!(l instanceof ConcatenationRope) || r.length() >= l.length());
+			if (splitLeft)
+				split(left);
+			if (splitRight)
+				split(right);
+			if (splitLeft || splitRight)
+				continue;
+
+			final int n = Math.min(Math.min(l.length() - leftOffset, r.length() - rightOffset), length - position);
+			if (!sameStorage(l, leftOffset, r, rightOffset)) {
+				if (x == null) {
+					x = new char[Math.min(length, BLOCK_SIZE)];
+					y = new char[x.length];
+				}
+				for (int j=0; j<n; j+=x.length) {
+					final int count = Math.min(x.length, n - j);
+					l.getChars(leftOffset + j, leftOffset + j + count, x, 0);
+					r.getChars(rightOffset + j, rightOffset + j + count, y, 0);
+					final int i = Arrays.mismatch(x, 0, count, y, 0, count);
+					if (i >= 0)
+						return position + j + i;
+				}
+			}
+			position += n;
+			leftOffset += n;
+			rightOffset += n;
+			if (leftOffset == l.length()) {
+				left.pop();
+				leftOffset = 0;
+			}
+			if (rightOffset == r.length()) {
+				right.pop();
+				rightOffset = 0;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the first character at which a rope and a
+	 * character sequence differ.
+	 * @param a the rope.
+	 * @param b the character sequence.
+	 * @return the index of the first difference, or -1 if the shorter
+	 * one is a prefix of the longer one.
+	 */
+	static int mismatch(final Rope a, final CharSequence b) {
+		final int length = Math.min(a.length(), b.length());
+		final char[] x = new char[Math.min(length, BLOCK_SIZE)], y = new char[x.length];
+		final RopeCursor cursor = new RopeCursor(a);
+		for (int position=0; position<length; ) {
+			cursor.seek(position);
+			final Rope leaf = cursor.leaf();
+			final int leafOffset = position - cursor.leafStart();
+			final int count = Math.min(Math.min(leaf.length() - leafOffset, length - position), x.length);
+			leaf.getChars(leafOffset, leafOffset + count, x, 0);
+			if (b instanceof String string) {
+				string.getChars(position, position + count, y, 0);
+			} else {
+				for (int j=0; j<count; ++j)
+					y[j] = b.charAt(position + j);
+			}
+			final int i = Arrays.mismatch(x, 0, count, y, 0, count);
+			if (i >= 0)
+				return position + i;
+			position += count;
+		}
+		return -1;
+	}
+
+	private static void split(final ArrayDeque<Rope> stack) {
+		final ConcatenationRope concatenation = (ConcatenationRope) stack.pop();
+		stack.push(concatenation.getRight());
+		stack.push(concatenation.getLeft());
+	}
+
+	/**
+	 * Returns whether ranges of two leaves are read from the same storage
+	 * at the same offset, as when a leaf was split by an edit.
+	 */
+	private static boolean sameStorage(final Rope l, final int leftOffset, final Rope r, final int rightOffset) {
+		final Rope leftBase = l instanceof SubstringRope substring ? substring.getRope() : l;
+		final Rope rightBase = r instanceof SubstringRope substring ? substring.getRope() : r;
+		if (leftBase != rightBase || !(leftBase instanceof FlatRope))
+			return false;
+		final int leftStart = l instanceof SubstringRope substring ? substring.getOffset() : 0;
+		final int rightStart = r instanceof SubstringRope substring ? substring.getOffset() : 0;
+		return leftStart + leftOffset == rightStart + rightOffset;
+	}
+}
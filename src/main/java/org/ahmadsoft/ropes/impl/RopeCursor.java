@@ -0,0 +1,100 @@
+package org.ahmadsoft.ropes.impl;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.ahmadsoft.ropes.Rope;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * A finger into a rope that speeds up random access with locality.
+ * <p>
+ * The cursor remembers the path from the root to the last leaf it
+ * visited. Accesses that fall within that leaf are resolved directly,
+ * and accesses elsewhere only climb back to the lowest ancestor that
+ * contains the requested index before descending again.
+ * <p>
+ * A cursor is mutable and must not be shared between threads.
+ */
+@ApiStatus.Internal
+public final class RopeCursor {
+
+	private final Rope rope;
+	private Rope[] path;
+	private int[] pathStart;
+	private int pathSize;
+	private Rope leaf;
+	private int leafStart;
+	private int leafEnd;
+
+	public RopeCursor(final Rope rope) {
+		this.rope = Objects.requireNonNull(rope);
+		final int depth = Math.max(RopeUtilities.depth(rope), 0);
+		this.path = new Rope[depth + 1];
+		this.pathStart = new int[depth + 1];
+		this.path[0] = rope;
+		this.pathSize = 1;
+		this.leaf = null;
+	}
+
+	/**
+	 * Returns the character at the specified index of the rope.
+	 * @param index the index.
+	 * @return the character at the specified index.
+	 */
+	public char charAt(final int index) {
+		if (index < this.leafStart || index >= this.leafEnd || this.leaf == null)
+			this.seek(index);
+		return this.leaf.charAt(index - this.leafStart);
+	}
+
+	/**
+	 * Position this cursor on the leaf containing the specified index.
+	 * @param index the index.
+	 */
+	public void seek(final int index) {
+		Objects.checkIndex(index, this.rope.length());
+		// climb to the lowest ancestor that contains the index
+		int top = this.pathSize - 1;
+		while (top > 0 && (index < this.pathStart[top] || index >= this.pathStart[top] + this.path[top].length()))
+			--top;
+		Rope node = this.path[top];
+		int start = this.pathStart[top];
+		while (node instanceof ConcatenationRope concatenation) {
+			final int leftLength = concatenation.getLeft().length();
+			if (index < start + leftLength) {
+				node = concatenation.getLeft();
+			} else {
+				start += leftLength;
+				node = concatenation.getRight();
+			}
+			if (++top == this.path.length) {
+				// only reachable if the depth field saturated on a hand-built rope
+				this.path = Arrays.copyOf(this.path, top * 2);
+				this.pathStart = Arrays.copyOf(this.pathStart, top * 2);
+			}
+			this.path[top] = node;
+			this.pathStart[top] = start;
+		}
+		this.pathSize = top + 1;
+		this.leaf = node;
+		this.leafStart = start;
+		this.leafEnd = start + node.length();
+	}
+
+	/**
+	 * Returns the leaf the cursor is positioned on.
+	 * @return the current leaf.
+	 */
+	public Rope leaf() {
+		return this.leaf;
+	}
+
+	/**
+	 * Returns the absolute index of the first character of the current leaf.
+	 * @return the start of the current leaf.
+	 */
+	public int leafStart() {
+		return this.leafStart;
+	}
+}
@@ -0,0 +1,224 @@
+package org.ahmadsoft.ropes.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ahmadsoft.ropes.Rope;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Encodes a rope to bytes, running a single charset encoder across all
+ * of its leaves through a pair of reusable buffers.
+ * <p>
+ * Latin-1 leaves skip the encoder when their bytes are already the
+ * output: always for ISO-8859-1, and for runs of ASCII in US-ASCII and
+ * UTF-8. When gathering, such bytes are passed on as buffers over the
+ * leaves themselves. Malformed and unmappable characters are replaced,
+ * as by {@link java.io.OutputStreamWriter}.
+ */
+@ApiStatus.Internal
+public final class RopeEncoder {
+
+	/**
+	 * The size of the character and byte buffers.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	private final CharsetEncoder encoder;
+	/**
+	 * Whether Latin-1 bytes may be copied to the output as they are.
+	 */
+	private final boolean latin1Raw;
+	/**
+	 * Whether ASCII bytes may be copied to the output as they are.
+	 */
+	private final boolean asciiRaw;
+	private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+	private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+	private final Sink sink;
+	/**
+	 * The segments gathered so far, or <code>null</code> when writing to
+	 * a sink.
+	 */
+	private final List<ByteBuffer> gathered;
+
+	private RopeEncoder(final Charset charset, final Sink sink, final List<ByteBuffer> gathered) {
+		this.sink = sink;
+		this.gathered = gathered;
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.latin1Raw = charset.equals(StandardCharsets.ISO_8859_1);
+		this.asciiRaw = this.latin1Raw || charset.equals(StandardCharsets.US_ASCII) || charset.equals(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Encode a rope to an output stream. The stream is neither flushed
+	 * nor closed.
+	 * @param rope the rope.
+	 * @param out the output stream.
+	 * @param charset the charset to encode with.
+	 * @throws IOException if writing fails.
+	 */
+	public static void write(final Rope rope, final OutputStream out, final Charset charset) throws IOException {
+		new RopeEncoder(charset, bytes -> out.write(bytes.array(), 0, bytes.limit()), null).encode(rope);
+	}
+
+	/**
+	 * Encode a rope to a blocking channel. The channel is not closed.
+	 * @param rope the rope.
+	 * @param out the channel.
+	 * @param charset the charset to encode with.
+	 * @throws IOException if writing fails.
+	 */
+	public static void write(final Rope rope, final WritableByteChannel out, final Charset charset) throws IOException {
+		new RopeEncoder(charset, bytes -> {
+			while (bytes.hasRemaining())
+				out.write(bytes);
+		}, null).encode(rope);
+	}
+
+	/**
+	 * Encode a rope to a list of byte buffers, for a gathering write.
+	 * Latin-1 storage that the charset encodes as itself is shared, not
+	 * copied; everything else is encoded into new buffers.
+	 * @param rope the rope.
+	 * @param charset the charset to encode with.
+	 * @return read-only buffers holding the encoded rope, in order.
+	 */
+	static List<ByteBuffer> gather(final Rope rope, final Charset charset) {
+		final ArrayList<ByteBuffer> gathered = new ArrayList<>();
+		final RopeEncoder encoder = new RopeEncoder(charset,
+				bytes -> gathered.add(ByteBuffer.allocate(bytes.remaining()).put(bytes).flip().asReadOnlyBuffer()), gathered);
+		try {
+			encoder.encode(rope);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // not thrown by the sink
+		}
+		return gathered;
+	}
+
+	/**
+	 * A destination for encoded bytes.
+	 */
+	@FunctionalInterface
+	private interface Sink {
+		/**
+		 * Write out all remaining bytes of a buffer.
+		 */
+		void write(ByteBuffer bytes) throws IOException;
+	}
+
+	private void drain() throws IOException {
+		this.bytes.flip();
+		this.sink.write(this.bytes);
+		this.bytes.clear();
+	}
+
+	private void encode(final Rope rope) throws IOException {
+		final int length = rope.length();
+		final RopeCursor cursor = new RopeCursor(rope);
+		int position = 0;
+		while (position < length) {
+			cursor.seek(position);
+			final Rope leaf = cursor.leaf();
+			final int leafOffset = position - cursor.leafStart();
+			final int count = leaf.length() - leafOffset;
+			// bytes may only bypass the encoder while it holds no pending input
+			if (this.asciiRaw && this.chars.position() == 0) {
+				final int copied = this.copyBytes(leaf, leafOffset, count);
+				position += copied;
+				if (copied == count)
+					continue;
+			}
+			final int from = position - cursor.leafStart();
+			final int n = Math.min(leaf.length() - from, this.chars.remaining());
+			leaf.getChars(from, from + n, this.chars.array(), this.chars.position());
+			this.chars.position(this.chars.position() + n);
+			position += n;
+			this.encodeChars(false);
+		}
+		this.encodeChars(true);
+		while (this.encoder.flush(this.bytes).isOverflow())
+			this.drain();
+		if (this.bytes.position() > 0)
+			this.drain();
+	}
+
+	/**
+	 * Pass the bytes of a Latin-1 leaf straight to the output, up to the
+	 * first byte the charset does not encode as itself. When gathering,
+	 * the leaf's storage itself becomes a segment.
+	 * @return the number of characters passed on.
+	 */
+	private int copyBytes(final Rope leaf, final int offset, final int count) throws IOException {
+		final ByteBuffer source = latin1Buffer(leaf, offset, offset + count);
+		if (source == null)
+			return 0;
+		// the buffer may be cut short of the range
+		int accepted = source.remaining();
+		if (!this.latin1Raw) {
+			for (int j=0; j<source.remaining(); ++j) {
+				if (source.get(j) < 0) {
+					accepted = j;
+					break;
+				}
+			}
+		}
+		if (accepted == 0)
+			return 0;
+		source.limit(accepted);
+		if (this.gathered != null) {
+			if (this.bytes.position() > 0)
+				this.drain();
+			this.gathered.add(source);
+			return accepted;
+		}
+		while (source.hasRemaining()) {
+			if (!this.bytes.hasRemaining())
+				this.drain();
+			final int n = Math.min(source.remaining(), this.bytes.remaining());
+			this.bytes.put(this.bytes.position(), source, source.position(), n);
+			this.bytes.position(this.bytes.position() + n);
+			source.position(source.position() + n);
+		}
+		return accepted;
+	}
+
+	/**
+	 * Returns a buffer over the Latin-1 storage of a range of a leaf, or
+	 * <code>null</code> if the leaf is not stored as Latin-1.
+	 */
+	private static ByteBuffer latin1Buffer(final Rope leaf, final int start, final int end) {
+		if (leaf instanceof FlatRope flat)
+			return flat.latin1Buffer(start, end);
+		if (leaf instanceof SubstringRope substring && substring.getRope() instanceof FlatRope flat)
+			return flat.latin1Buffer(substring.getOffset() + start, substring.getOffset() + end);
+		return null;
+	}
+
+	private void encodeChars(final boolean endOfInput) throws IOException {
+		this.chars.flip();
+		while (true) {
+			final CoderResult result = this.encoder.encode(this.chars, this.bytes, endOfInput);
+			if (result.isUnderflow())
+				break;
+			if (result.isOverflow())
+				this.drain();
+			else
+				result.throwException();
+		}
+		this.chars.compact();
+	}
+}
@@ -0,0 +1,73 @@
+package org.ahmadsoft.ropes.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.ahmadsoft.ropes.Rope;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Exposes a rope as a sequence of buffers, one per leaf range, for
+ * scatter/gather output without copying the leaves into one buffer.
+ */
+@ApiStatus.Internal
+public final class RopeSegments {
+
+	private RopeSegments() {
+	}
+
+	/**
+	 * Returns read-only buffers over the leaves of a rope, in order.
+	 * Leaves backed by strings, arrays or UTF-16 buffers are shared, not
+	 * copied, and substrings are resolved to ranges of the leaves they
+	 * were taken from.
+	 * @param rope the rope.
+	 * @return the buffers.
+	 */
+	public static List<CharBuffer> chars(final Rope rope) {
+		final ArrayList<CharBuffer> segments = new ArrayList<>();
+		final RopeCursor cursor = new RopeCursor(rope);
+		for (int position=0; position<rope.length(); ) {
+			cursor.seek(position);
+			final Rope leaf = cursor.leaf();
+			segments.add(leafChars(leaf, 0, leaf.length()));
+			position = cursor.leafStart() + leaf.length();
+		}
+		return segments;
+	}
+
+	/**
+	 * Returns read-only buffers holding a rope encoded with the specified
+	 * charset, in order, for <code>GatheringByteChannel.write(ByteBuffer[])</code>.
+	 * Latin-1 leaves, and ASCII runs of them for US-ASCII and UTF-8, are
+	 * shared, not copied; the rest of the rope is encoded.
+	 * @param rope the rope.
+	 * @param charset the charset to encode with.
+	 * @return the buffers.
+	 */
+	public static List<ByteBuffer> bytes(final Rope rope, final Charset charset) {
+		return RopeEncoder.gather(rope, charset);
+	}
+
+	/**
+	 * Returns a read-only buffer over a range of a leaf, such as one found
+	 * by a {@link RopeCursor}, sharing the leaf's storage where it can.
+	 * @param leaf the leaf.
+	 * @param start the start offset, inclusive.
+	 * @param end the end offset, exclusive.
+	 * @return the buffer.
+	 */
+	public static CharBuffer leafChars(final Rope leaf, final int start, final int end) {
+		if (leaf instanceof FlatRope flat)
+			return flat.charBuffer(start, end);
+		if (leaf instanceof SubstringRope substring && substring.getRope() instanceof FlatRope flat) {
+			Objects.checkFromToIndex(start, end, substring.length());
+			return flat.charBuffer(substring.getOffset() + start, substring.getOffset() + end);
+		}
+		return CharBuffer.wrap(leaf, start, end).slice();
+	}
+}
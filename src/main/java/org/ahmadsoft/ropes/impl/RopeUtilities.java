@@ -25,6 +25,7 @@ package org.ahmadsoft.ropes.impl;
 import java.io.PrintStream;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.ahmadsoft.ropes.Rope;
 
@@ -53,15 +54,17 @@ class RopeUtilities {
 	private RopeUtilities() {}
 
 	/**
-	 * Rebalance a rope if the depth has exceeded MAX_ROPE_DEPTH. If the
-	 * rope depth is less than MAX_ROPE_DEPTH or if the rope is of unknown
-	 * type, no rebalancing will occur.
+	 * Rebalance a concatenation if it is no longer balanced, as defined in
+	 * "Ropes: an Alternative to Strings", or if its depth has exceeded
+	 * MAX_ROPE_DEPTH. Subtrees that are still balanced are reused intact,
+	 * so the cost is proportional to the unbalanced part of the rope
+	 * rather than to its number of leaves.
 	 * @param r the rope to rebalance.
 	 * @return a rebalanced copy of the specified rope.
 	 */
 	public static Rope autoRebalance(final Rope r) {
-		if (r instanceof AbstractRope other && other.depth() > MAX_ROPE_DEPTH) {
-			return rebalance(r);
+		if (r instanceof ConcatenationRope other && (other.depth() > MAX_ROPE_DEPTH || !isBalanced(other))) {
+			return restoreBalance(r);
 		} else {
 			return r;
 		}
@@ -85,22 +88,176 @@ class RopeUtilities {
 				+ ". Concatenation would overflow length field.");
 		final int combineLength = 17;
 		if (left.length() + right.length() < combineLength) {
-			return Rope.of(left.toString() + right);
+			return flattenLeaf(left, right, combineLength - 1);
 		}
-		if (!(left instanceof ConcatenationRope)) {
-			if (right instanceof ConcatenationRope cRight) {
-				if (left.length() + cRight.getLeft().length() < combineLength)
-					return autoRebalance(new ConcatenationRope(Rope.viewOf(left.toString() + cRight.getLeft()), cRight.getRight()));
-			}
+		if (!(left instanceof ConcatenationRope) && left.length() < combineLength) {
+			final Rope merged = prependToLeftmostLeaf(left, right, combineLength);
+			if (merged != null)
+				return autoRebalance(merged);
 		}
-		if (!(right instanceof ConcatenationRope)) {
-			if (left instanceof ConcatenationRope cLeft) {
-				if (right.length() + cLeft.getRight().length() < combineLength)
-					return autoRebalance(new ConcatenationRope(cLeft.getLeft(), Rope.viewOf(cLeft.getRight().toString() + right)));
-			}
+		if (!(right instanceof ConcatenationRope) && right.length() < combineLength) {
+			final Rope merged = appendToRightmostLeaf(left, right, combineLength);
+			if (merged != null)
+				return autoRebalance(merged);
 		}
 		
-		return autoRebalance(new ConcatenationRope(left, right));
+		return autoRebalance(join(left, right));
+	}
+
+	/**
+	 * Append a short rope to the rightmost leaf of another, if the two
+	 * fit in a single leaf together. Only the right spine is copied, so
+	 * the shape of the tree is unchanged.
+	 * @param left the rope to append to.
+	 * @param right the short rope.
+	 * @param combineLength the exclusive maximum length of a merged leaf.
+	 * @return the concatenation, or <code>null</code> if the rightmost
+	 * leaf is too long.
+	 */
+	private static Rope appendToRightmostLeaf(final Rope left, final Rope right, final int combineLength) {
+		Rope leaf = left;
+		while (leaf instanceof ConcatenationRope concatenation)
+			leaf = concatenation.getRight();
+		if (leaf.length() + right.length() >= combineLength)
+			return null;
+		final ArrayList<ConcatenationRope> spine = new ArrayList<>(Math.max(depth(left), 0));
+		for (Rope x = left; x instanceof ConcatenationRope concatenation; x = concatenation.getRight())
+			spine.add(concatenation);
+		Rope result = flattenLeaf(leaf, right, combineLength - 1);
+		for (int j=spine.size()-1; j>=0; --j)
+			result = new ConcatenationRope(spine.get(j).getLeft(), result);
+		return result;
+	}
+
+	/**
+	 * Prepend a short rope to the leftmost leaf of another, if the two
+	 * fit in a single leaf together. Only the left spine is copied.
+	 * @param left the short rope.
+	 * @param right the rope to prepend to.
+	 * @param combineLength the exclusive maximum length of a merged leaf.
+	 * @return the concatenation, or <code>null</code> if the leftmost
+	 * leaf is too long.
+	 */
+	private static Rope prependToLeftmostLeaf(final Rope left, final Rope right, final int combineLength) {
+		Rope leaf = right;
+		while (leaf instanceof ConcatenationRope concatenation)
+			leaf = concatenation.getLeft();
+		if (left.length() + leaf.length() >= combineLength)
+			return null;
+		final ArrayList<ConcatenationRope> spine = new ArrayList<>(Math.max(depth(right), 0));
+		for (Rope x = right; x instanceof ConcatenationRope concatenation; x = concatenation.getLeft())
+			spine.add(concatenation);
+		Rope result = flattenLeaf(left, leaf, combineLength - 1);
+		for (int j=spine.size()-1; j>=0; --j)
+			result = new ConcatenationRope(result, spine.get(j).getRight());
+		return result;
+	}
+
+	/**
+	 * Join two ropes into a height-balanced (AVL) concatenation. When
+	 * the depths of the ropes differ by more than one, the shallower
+	 * rope is joined into the facing spine of the deeper one and balance
+	 * is restored on the way back up using rotations, so only
+	 * O(|depth(left) - depth(right)|) nodes are created.
+	 * <p>
+	 * If either rope is not itself height-balanced the result is still
+	 * correct, but may need a subsequent {@link #autoRebalance(Rope)}.
+	 * @param left the first rope.
+	 * @param right the second rope.
+	 * @return the concatenation of the specified ropes.
+	 */
+	static Rope join(final Rope left, final Rope right) {
+		final int leftDepth = depth(left), rightDepth = depth(right);
+		if (leftDepth > rightDepth + 1 && left instanceof ConcatenationRope cLeft)
+			return joinRight(cLeft, right);
+		if (rightDepth > leftDepth + 1 && right instanceof ConcatenationRope cRight)
+			return joinLeft(left, cRight);
+		return new ConcatenationRope(left, right);
+	}
+
+	/*
+	 * Join a rope into the right spine of a deeper one.
+	 */
+	private static ConcatenationRope joinRight(final ConcatenationRope left, final Rope right) {
+		final Rope l = left.getLeft(), c = left.getRight();
+		if (depth(c) <= depth(right) + 1) {
+			final ConcatenationRope t = new ConcatenationRope(c, right);
+			if (t.depth() <= depth(l) + 1)
+				return new ConcatenationRope(l, t);
+			return ConcatenationRope.rotateLeft(new ConcatenationRope(l, ConcatenationRope.rotateRight(t)));
+		}
+		final Rope t = join(c, right);
+		final ConcatenationRope result = new ConcatenationRope(l, t);
+		if (depth(t) <= depth(l) + 1)
+			return result;
+		return ConcatenationRope.rotateLeft(result);
+	}
+
+	/*
+	 * Join a rope into the left spine of a deeper one. The mirror image
+	 * of joinRight.
+	 */
+	private static ConcatenationRope joinLeft(final Rope left, final ConcatenationRope right) {
+		final Rope c = right.getLeft(), r = right.getRight();
+		if (depth(c) <= depth(left) + 1) {
+			final ConcatenationRope t = new ConcatenationRope(left, c);
+			if (t.depth() <= depth(r) + 1)
+				return new ConcatenationRope(t, r);
+			return ConcatenationRope.rotateRight(new ConcatenationRope(ConcatenationRope.rotateLeft(t), r));
+		}
+		final Rope t = join(left, c);
+		final ConcatenationRope result = new ConcatenationRope(t, r);
+		if (depth(t) <= depth(r) + 1)
+			return result;
+		return ConcatenationRope.rotateRight(result);
+	}
+
+	/**
+	 * Flatten the concatenation of two ropes into a string. Both ropes
+	 * are copied directly into a single buffer.
+	 * @param left the first rope.
+	 * @param right the second rope.
+	 * @return the concatenation of the specified ropes, as a string.
+	 */
+	static String flatten(final Rope left, final Rope right) {
+		final char[] chars = new char[left.length() + right.length()];
+		left.getChars(0, left.length(), chars, 0);
+		right.getChars(0, right.length(), chars, left.length());
+		return new String(chars);
+	}
+
+	/**
+	 * Flatten the concatenation of two ropes into a single leaf. Two
+	 * Latin-1 leaves stay Latin-1. Otherwise the result is a UTF-16
+	 * character array leaf with room for further appends, which are
+	 * made in place when the left rope already is such a leaf.
+	 * @param left the first rope.
+	 * @param right the second rope.
+	 * @param capacity the capacity of a new character array leaf.
+	 * @return the concatenation of the specified ropes, as a leaf.
+	 */
+	static FlatRope flattenLeaf(final Rope left, final Rope right, final int capacity) {
+		if (left instanceof FlatCharArrayRope buffer)
+			return buffer.append(right);
+		if (left instanceof FlatLatin1Rope latin1Left && right instanceof FlatLatin1Rope latin1Right)
+			return latin1Left.concat(latin1Right);
+		return FlatCharArrayRope.concat(left, right, capacity);
+	}
+
+	/**
+	 * Returns 31 raised to the specified power, with the overflow of
+	 * <code>int</code> arithmetic, as used by polynomial hash codes.
+	 * @param n the exponent.
+	 * @return 31<sup>n</sup>.
+	 */
+	static int pow31(int n) {
+		int result = 1, base = 31;
+		for (; n > 0; n >>= 1) {
+			if ((n & 1) != 0)
+				result *= base;
+			base *= base;
+		}
+		return result;
 	}
 
 	/**
@@ -122,7 +279,101 @@ class RopeUtilities {
 			return false;
 		return (RopeUtilities.FIBONACCI[depth + 2] <= r.length());	// TODO: not necessarily valid w/e.g. padding char sequences.
 	}
+
+	/**
+	 * Rebalance a rope using the algorithm described in "Ropes: an
+	 * Alternative to Strings". Balanced subtrees and leaves are added,
+	 * left to right, to a forest whose slots are indexed by Fibonacci
+	 * length ranges; only unbalanced concatenations are taken apart.
+	 * @param r the rope to rebalance.
+	 * @return a balanced copy of the specified rope.
+	 */
+	static Rope restoreBalance(final Rope r) {
+		final Rope[] forest = new Rope[FIBONACCI.length];
+		final ArrayDeque<Rope> toExamine = new ArrayDeque<>();
+		toExamine.push(r);
+		while (!toExamine.isEmpty()) {
+			final Rope x = toExamine.pop();
+			if (x instanceof ConcatenationRope other && !isBalanced(other)) {
+				toExamine.push(other.getRight());
+				toExamine.push(other.getLeft());
+			} else {
+				addToForest(x, forest);
+			}
+		}
+		// slots hold successively earlier text as their index increases
+		Rope result = null;
+		for (final Rope slot: forest) {
+			if (slot != null)
+				result = result == null ? slot : new ConcatenationRope(slot, result);
+		}
+		return result == null ? Rope.EMPTY : result;
+	}
+
+	/**
+	 * Add a balanced rope to the forest. Slot <code>i</code> holds a rope
+	 * whose length is in the range <code>[F(i+2), F(i+3))</code>.
+	 */
+	private static void addToForest(final Rope r, final Rope[] forest) {
+		if (r.length() == 0)
+			return;
+		// concatenate the contents of all slots below the one r belongs in
+		int i = 0;
+		Rope prefix = null;
+		for (; r.length() >= FIBONACCI[i + 3]; ++i) {
+			if (forest[i] != null) {
+				prefix = prefix == null ? forest[i] : new ConcatenationRope(forest[i], prefix);
+				forest[i] = null;
+			}
+		}
+		Rope insertee = prefix == null ? r : new ConcatenationRope(prefix, r);
+		// then move up until reaching an empty slot whose range fits
+		for (;; ++i) {
+			if (forest[i] != null) {
+				insertee = new ConcatenationRope(forest[i], insertee);
+				forest[i] = null;
+			}
+			if (insertee.length() < FIBONACCI[i + 3]) {
+				forest[i] = insertee;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Rebalance a rope by rebuilding it from its leaves. Very large ropes
+	 * are rebalanced in parallel.
+	 * @param r the rope to rebalance.
+	 * @return a rebalanced copy of the specified rope.
+	 */
 	public static Rope rebalance(final Rope r) {
+		if (r.length() >= ParallelRebalance.PARALLEL_THRESHOLD)
+			return ParallelRebalance.rebalance(r, 0);
+		final ArrayList<Rope> leafNodes = leaves(r);
+		return merge(leafNodes, 0, leafNodes.size());
+	}
+
+	/**
+	 * Rebalance a rope, packing runs of adjacent leaves shorter than
+	 * the target length into flat leaves of at most that length. Very
+	 * large ropes are rebalanced in parallel.
+	 * @param r the rope to rebalance.
+	 * @param targetLeafLength the maximum length of a packed leaf.
+	 * @return a rebalanced copy of the specified rope.
+	 */
+	public static Rope rebalance(final Rope r, final int targetLeafLength) {
+		if (r.length() >= ParallelRebalance.PARALLEL_THRESHOLD)
+			return ParallelRebalance.rebalance(r, targetLeafLength);
+		final ArrayList<Rope> leafNodes = coalesce(leaves(r), targetLeafLength);
+		if (leafNodes.isEmpty())
+			return Rope.EMPTY;
+		return merge(leafNodes, 0, leafNodes.size());
+	}
+
+	/**
+	 * Returns the leaves of a rope, in order.
+	 */
+	static ArrayList<Rope> leaves(final Rope r) {
 		// get all the nodes into a list
 		
 		final ArrayList<Rope> leafNodes = new ArrayList<>();
@@ -139,9 +390,50 @@ class RopeUtilities {
 				leafNodes.add(x);
 			}
 		}
-		return merge(leafNodes, 0, leafNodes.size());
+		return leafNodes;
 	}
-	private static Rope merge(ArrayList<Rope> leafNodes, int start, int end) {
+
+	/**
+	 * Pack runs of adjacent leaves shorter than the target length into
+	 * flat leaves of at most that length. Empty leaves are dropped and
+	 * longer leaves are kept as they are.
+	 */
+	static ArrayList<Rope> coalesce(final List<Rope> leafNodes, final int targetLeafLength) {
+		final ArrayList<Rope> result = new ArrayList<>();
+		int i = 0;
+		while (i < leafNodes.size()) {
+			int j = i, length = 0, pieces = 0;
+			Rope last = null;
+			while (j < leafNodes.size() && length + leafNodes.get(j).length() <= targetLeafLength) {
+				final Rope leaf = leafNodes.get(j++);
+				if (leaf.length() > 0) {
+					length += leaf.length();
+					++pieces;
+					last = leaf;
+				}
+			}
+			if (j == i) {
+				// too long to pack
+				result.add(leafNodes.get(i++));
+				continue;
+			}
+			if (pieces == 1) {
+				result.add(last);
+			} else if (pieces > 1) {
+				final char[] chars = new char[length];
+				for (int offset = 0; i < j; ++i) {
+					final Rope leaf = leafNodes.get(i);
+					leaf.getChars(0, leaf.length(), chars, offset);
+					offset += leaf.length();
+				}
+				result.add(new FlatStringRope(new String(chars)));
+			}
+			i = j;
+		}
+		return result;
+	}
+
+	static Rope merge(ArrayList<Rope> leafNodes, int start, int end) {
 		int range = end - start;
 		return switch (range) {
 			case 1 -> leafNodes.get(start);
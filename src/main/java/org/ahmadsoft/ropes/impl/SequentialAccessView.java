@@ -0,0 +1,77 @@
+package org.ahmadsoft.ropes.impl;
+
+import org.ahmadsoft.ropes.Rope;
+
+/**
+ * A view of a rope optimized for the access patterns of regular
+ * expression searches: mostly sequential, with frequent short
+ * backtracking.
+ * <p>
+ * A window of the current leaf is copied into a local buffer, so
+ * accesses that stay within it are plain array reads. Accesses outside
+ * the window reposition a {@link RopeCursor} in O(log n), in either
+ * direction, and refill the window from the new leaf.
+ * <p>
+ * A view is mutable and must not be shared between threads.
+ */
+final class SequentialAccessView implements CharSequence {
+
+	/**
+	 * The maximum number of characters copied out of a leaf at once.
+	 */
+	private static final int WINDOW_SIZE = 256;
+
+	private final Rope rope;
+	private final RopeCursor cursor;
+	private final char[] window;
+	private int windowStart;
+	private int windowLength;
+
+	SequentialAccessView(final Rope rope) {
+		this.rope = rope;
+		this.cursor = new RopeCursor(rope);
+		this.window = new char[Math.min(WINDOW_SIZE, rope.length())];
+	}
+
+	@Override
+	public char charAt(final int index) {
+		final int offset = index - this.windowStart;
+		if (offset >= 0 && offset < this.windowLength)
+			return this.window[offset];
+		this.fill(index, offset >= 0);
+		return this.window[index - this.windowStart];
+	}
+
+	/**
+	 * Refill the window from the leaf containing the specified index.
+	 * When moving forwards the window begins at the index; when moving
+	 * backwards it ends there, so that further backtracking stays
+	 * within the window.
+	 */
+	private void fill(final int index, final boolean forwards) {
+		this.cursor.seek(index);
+		final Rope leaf = this.cursor.leaf();
+		final int leafStart = this.cursor.leafStart();
+		final int offset = index - leafStart;
+		final int from = forwards ? offset : Math.max(0, offset + 1 - this.window.length);
+		final int to = Math.min(from + this.window.length, leaf.length());
+		leaf.getChars(from, to, this.window, 0);
+		this.windowStart = leafStart + from;
+		this.windowLength = to - from;
+	}
+
+	@Override
+	public int length() {
+		return this.rope.length();
+	}
+
+	@Override
+	public CharSequence subSequence(final int start, final int end) {
+		return this.rope.subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return this.rope.toString();
+	}
+}
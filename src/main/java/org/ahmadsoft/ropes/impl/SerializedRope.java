@@ -23,22 +23,42 @@
 package org.ahmadsoft.ropes.impl;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 
 import org.ahmadsoft.ropes.Rope;
+import org.ahmadsoft.ropes.RopeBuilder;
 
 /**
  * An instance of this class replaces ropes during the serialization
- * process. This class serializes into string form, and deserializes
- * into a <code>FlatRope</code>. <code>readResolve</code> returns the
- * flat rope.
+ * process. This class serializes the characters of the rope, and
+ * deserializes into a balanced rope. <code>readResolve</code> returns
+ * the rope.
  * <p>
  * The purpose of this class is to provide a performant serialization
- * mechanism for Ropes. The ideal serial form of a rope is as a String,
- * regardless of the particular in-memory representation.
+ * mechanism for Ropes. The ideal serial form of a rope is its sequence
+ * of characters, regardless of the particular in-memory representation.
+ * The characters are written in chunks, each prefixed by its encoding
+ * and length; chunks that fit in Latin-1 take one byte per character,
+ * the others two. Neither writing nor reading ever holds more than a
+ * chunk outside the rope itself.
  * @author Amin Ahmad
  */
 final class SerializedRope implements Externalizable {
 
+	/**
+	 * The maximum number of characters in a chunk.
+	 */
+	private static final int CHUNK_SIZE = 4096;
+
+	/**
+	 * Chunk encoding: one byte per character.
+	 */
+	private static final byte LATIN1 = 0;
+	/**
+	 * Chunk encoding: two bytes per character, big-endian.
+	 */
+	private static final byte UTF16 = 1;
+
 	/**
 	 * The rope.
 	 */
@@ -59,9 +79,7 @@ final class SerializedRope implements Externalizable {
 	@Override
 	public void readExternal(final ObjectInput in) throws IOException,
 			ClassNotFoundException {
-		// Read the UTF string and build a rope from it. This should
-		// result in a FlatRope.
-		this.rope = Rope.of(in.readUTF());
+		this.rope = readChars(in);
 	}
 
 	@Serial
@@ -73,8 +91,75 @@ final class SerializedRope implements Externalizable {
 
 	@Override
 	public void writeExternal(final ObjectOutput out) throws IOException {
-		// Evaluate the rope (toString()) and write as UTF. Unfortunately,
-		// this requires O(n) temporarily-allocated heap space.
-		out.writeUTF(this.rope.toString());
+		writeChars(out, this.rope);
+	}
+
+	/**
+	 * Write the characters of a rope in the chunked serial form.
+	 * @param out the output.
+	 * @param rope the rope.
+	 * @throws IOException if writing fails.
+	 */
+	static void writeChars(final ObjectOutput out, final Rope rope) throws IOException {
+		final int length = rope.length();
+		out.writeInt(length);
+		final char[] chars = new char[Math.min(length, CHUNK_SIZE)];
+		final byte[] bytes = new byte[2 * chars.length];
+		for (int offset=0; offset<length; offset+=chars.length) {
+			final int n = Math.min(chars.length, length - offset);
+			rope.getChars(offset, offset + n, chars, 0);
+			boolean latin1 = true;
+			for (int j=0; j<n && latin1; ++j)
+				latin1 = chars[j] <= 0xFF;
+			out.writeByte(latin1 ? LATIN1 : UTF16);
+			out.writeInt(n);
+			if (latin1) {
+				for (int j=0; j<n; ++j)
+					bytes[j] = (byte) chars[j];
+				out.write(bytes, 0, n);
+			} else {
+				for (int j=0; j<n; ++j) {
+					bytes[2 * j] = (byte) (chars[j] >>> 8);
+					bytes[2 * j + 1] = (byte) chars[j];
+				}
+				out.write(bytes, 0, 2 * n);
+			}
+		}
+	}
+
+	/**
+	 * Read characters written by {@link #writeChars(ObjectOutput, Rope)}
+	 * into a balanced rope.
+	 * @param in the input.
+	 * @return the rope.
+	 * @throws IOException if reading fails or the input is corrupt.
+	 */
+	static Rope readChars(final ObjectInput in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0)
+			throw new StreamCorruptedException("Illegal rope length: " + length);
+		// build the rope one chunk at a time, never holding the whole
+		// content as a single string
+		final RopeBuilder builder = new RopeBuilder(CHUNK_SIZE);
+		final byte[] bytes = new byte[2 * CHUNK_SIZE];
+		final char[] chars = new char[CHUNK_SIZE];
+		while (builder.length() < length) {
+			final byte encoding = in.readByte();
+			final int n = in.readInt();
+			if (n <= 0 || n > Math.min(CHUNK_SIZE, length - builder.length()))
+				throw new StreamCorruptedException("Illegal chunk length: " + n);
+			if (encoding == LATIN1) {
+				in.readFully(bytes, 0, n);
+				builder.append(new String(bytes, 0, n, StandardCharsets.ISO_8859_1));
+			} else if (encoding == UTF16) {
+				in.readFully(bytes, 0, 2 * n);
+				for (int j=0; j<n; ++j)
+					chars[j] = (char) (((bytes[2 * j] & 0xFF) << 8) | (bytes[2 * j + 1] & 0xFF));
+				builder.append(new String(chars, 0, n));
+			} else {
+				throw new StreamCorruptedException("Illegal chunk encoding: " + encoding);
+			}
+		}
+		return builder.build();
 	}
 }
@@ -0,0 +1,156 @@
+package org.ahmadsoft.ropes.impl;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.ahmadsoft.ropes.Rope;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Serializes a batch of ropes as a graph of their nodes, writing each
+ * node once and referring back to it wherever it is shared.
+ * <p>
+ * Ropes derived from one another by editing share most of their
+ * subtrees, so the serial form of a batch of versions grows with their
+ * distinct content rather than with their total length. Reading the
+ * batch back rebuilds the same sharing.
+ * <p>
+ * The form is a sequence of records, each starting with a tag. Node
+ * records are numbered in the order they appear, and refer to earlier
+ * nodes by number; a root record names the node that is the next rope
+ * of the batch. Leaves are written in the chunked form of
+ * {@link SerializedRope}.
+ */
+@ApiStatus.Internal
+public final class SharedSerialization {
+
+	private static final byte LEAF = 0;
+	private static final byte CONCATENATION = 1;
+	private static final byte SUBSTRING = 2;
+	private static final byte REVERSE = 3;
+	private static final byte ROOT = 4;
+
+	private SharedSerialization() {
+	}
+
+	/**
+	 * Write a batch of ropes, sharing the nodes they have in common.
+	 * @param out the output.
+	 * @param ropes the ropes.
+	 * @throws IOException if writing fails.
+	 */
+	public static void write(final ObjectOutput out, final List<? extends Rope> ropes) throws IOException {
+		final IdentityHashMap<Rope, Integer> ids = new IdentityHashMap<>();
+		final ArrayDeque<Rope> stack = new ArrayDeque<>();
+		out.writeInt(ropes.size());
+		for (final Rope root : ropes) {
+			// write the nodes below the root in post-order, skipping any
+			// written before
+			stack.push(root);
+			while (!stack.isEmpty()) {
+				final Rope node = stack.peek();
+				if (ids.containsKey(node)) {
+					stack.pop();
+					continue;
+				}
+				boolean ready = true;
+				if (node instanceof ConcatenationRope concatenation) {
+					// not short-circuiting, so that both children are pushed
+					ready = pushIfUnwritten(stack, ids, concatenation.getRight())
+							& pushIfUnwritten(stack, ids, concatenation.getLeft());
+				} else if (node instanceof SubstringRope substring) {
+					ready = pushIfUnwritten(stack, ids, substring.getRope());
+				} else if (node instanceof ReverseRope reverse) {
+					ready = pushIfUnwritten(stack, ids, reverse.getRope());
+				}
+				if (!ready)
+					continue;
+				stack.pop();
+				if (node instanceof ConcatenationRope concatenation) {
+					out.writeByte(CONCATENATION);
+					out.writeInt(ids.get(concatenation.getLeft()));
+					out.writeInt(ids.get(concatenation.getRight()));
+				} else if (node instanceof SubstringRope substring) {
+					out.writeByte(SUBSTRING);
+					out.writeInt(ids.get(substring.getRope()));
+					out.writeInt(substring.getOffset());
+					out.writeInt(substring.length());
+				} else if (node instanceof ReverseRope reverse) {
+					out.writeByte(REVERSE);
+					out.writeInt(ids.get(reverse.getRope()));
+				} else {
+					out.writeByte(LEAF);
+					SerializedRope.writeChars(out, node);
+				}
+				ids.put(node, ids.size());
+			}
+			out.writeByte(ROOT);
+			out.writeInt(ids.get(root));
+		}
+	}
+
+	/**
+	 * Push a node onto the stack if it has not been written yet.
+	 * @return <code>true</code> if the node was already written.
+	 */
+	private static boolean pushIfUnwritten(final ArrayDeque<Rope> stack, final IdentityHashMap<Rope, Integer> ids,
+			final Rope node) {
+		if (ids.containsKey(node))
+			return true;
+		stack.push(node);
+		return false;
+	}
+
+	/**
+	 * Read a batch of ropes written by {@link #write(ObjectOutput, List)}.
+	 * @param in the input.
+	 * @return the ropes, sharing nodes as the written ropes did.
+	 * @throws IOException if reading fails or the input is corrupt.
+	 */
+	public static List<Rope> read(final ObjectInput in) throws IOException {
+		final int count = in.readInt();
+		if (count < 0)
+			throw new StreamCorruptedException("Illegal rope count: " + count);
+		final ArrayList<Rope> nodes = new ArrayList<>();
+		final ArrayList<Rope> ropes = new ArrayList<>();
+		while (ropes.size() < count) {
+			final byte tag = in.readByte();
+			switch (tag) {
+				case LEAF -> nodes.add(SerializedRope.readChars(in));
+				case CONCATENATION -> {
+					final Rope left = node(in, nodes), right = node(in, nodes);
+					if ((long) left.length() + right.length() > Integer.MAX_VALUE)
+						throw new StreamCorruptedException("Rope length would overflow length field.");
+					nodes.add(new ConcatenationRope(left, right));
+				}
+				case SUBSTRING -> {
+					final Rope base = node(in, nodes);
+					final int offset = in.readInt(), length = in.readInt();
+					if (offset < 0 || length < 0 || (long) offset + length > base.length())
+						throw new StreamCorruptedException("Illegal substring offset (" + offset + ") and length (" + length + ")");
+					// a long leaf may have been read back as a tree
+					nodes.add(base instanceof FlatRope flat
+							? new SubstringRope(flat, offset, length)
+							: base.subSequence(offset, offset + length));
+				}
+				case REVERSE -> nodes.add(new ReverseRope(node(in, nodes)));
+				case ROOT -> ropes.add(node(in, nodes));
+				default -> throw new StreamCorruptedException("Illegal node tag: " + tag);
+			}
+		}
+		return ropes;
+	}
+
+	private static Rope node(final ObjectInput in, final ArrayList<Rope> nodes) throws IOException {
+		final int id = in.readInt();
+		if (id < 0 || id >= nodes.size())
+			throw new StreamCorruptedException("Illegal node reference: " + id);
+		return nodes.get(id);
+	}
+}
@@ -65,6 +65,12 @@ public final class SubstringRope extends AbstractRope {
 		return RopeUtilities.depth(getRope());
 	}
 
+	@Override
+	public void getChars(final int srcBegin, final int srcEnd, final char[] dst, final int dstBegin) {
+		Objects.checkFromToIndex(srcBegin, srcEnd, this.length());
+		this.rope.getChars(this.offset + srcBegin, this.offset + srcEnd, dst, dstBegin);
+	}
+
 	int getOffset() {
 		return this.offset;
 	}
@@ -29,7 +29,9 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.Random;
 import java.util.function.IntFunction;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.ahmadsoft.ropes.CharIterator;
@@ -38,6 +40,10 @@ import org.junit.Assert;
 import junit.framework.TestCase;
 
 import org.ahmadsoft.ropes.Rope;
+import org.ahmadsoft.ropes.RopeBuilder;
+import org.ahmadsoft.ropes.RopeEdit;
+import org.ahmadsoft.ropes.RopeReader;
+import org.ahmadsoft.ropes.TransientRope;
 
 public class RopeTest extends TestCase {
 	
@@ -210,8 +216,39 @@ public class RopeTest extends TestCase {
 		i=z4.iterator(2);
 		assertIteratorEquals("67", i);
 	}
+
+	public void testIteratorAcrossLeaves() {
+		FlatStringRope z1 = (FlatStringRope) Rope.of("0123456789");
+		StringBuilder expected = new StringBuilder();
+		Rope r = Rope.EMPTY;
+		for (int j=0; j<100; ++j) {
+			Rope leaf = switch (j % 4) {
+				case 0 -> Rope.of("");
+				case 1 -> new SubstringRope(z1, j % 7, 3);
+				case 2 -> new ReverseRope(z1);
+				default -> Rope.viewOf(new StringBuilder("x".repeat(j)));
+			};
+			r = new ConcatenationRope(r, leaf);
+			expected.append(leaf);
+		}
+		for (int start=0; start<=expected.length(); start+=37) {
+			assertIteratorEquals(expected.substring(start), r.iterator(start));
+		}
+
+		// deeper than the depth field can count
+		Rope deep = Rope.of("z");
+		expected.setLength(0);
+		expected.append('z');
+		for (int j=0; j<300; ++j) {
+			deep = new ConcatenationRope(Rope.of(String.valueOf((char) ('a' + j % 26))), deep);
+			expected.insert(0, (char) ('a' + j % 26));
+		}
+		assertEquals(Byte.MAX_VALUE, ((AbstractRope) deep).depth());
+		assertIteratorEquals(expected.toString(), deep.iterator(0));
+		assertIteratorEquals(expected.substring(150), deep.iterator(150));
+	}
 	
-	public void testReverse() {
+	public void testReverse() throws IOException {
 		Rope x1 = Rope.of("012345");
 		Rope x2 = Rope.of("67");
 		Rope x3 = new ConcatenationRope(x1, x2);
@@ -220,6 +257,26 @@ public class RopeTest extends TestCase {
 		assertEquals("76543210", x3.reverse().toString());
 		assertEquals(x3.reverse(), x3.reverse().reverse().reverse());
 		assertEquals("654321", x3.reverse().subSequence(1, 7).toString());
+
+		StringBuilder text = new StringBuilder();
+		Rope long1 = Rope.EMPTY;
+		for (int j=0; j<3000; ++j) {
+			long1 = long1.append(Rope.of("piece " + j + ","));
+			text.append("piece ").append(j).append(',');
+		}
+		String reversed = text.reverse().toString();
+		Rope reverse = new ReverseRope(long1);
+		StringWriter out = new StringWriter();
+		reverse.write(out, 7, 20000);
+		assertEquals(reversed.substring(7, 20007), out.toString());
+		StringBuilder iterated = new StringBuilder();
+		for (CharIterator i = reverse.iterator(5); i.hasNext(); )
+			iterated.append(i.nextChar());
+		assertEquals(reversed.substring(5), iterated.toString());
+		iterated.setLength(0);
+		for (CharIterator i = reverse.reverseIterator(5); i.hasNext(); )
+			iterated.append(i.nextChar());
+		assertEquals(new StringBuilder(reversed.substring(0, reversed.length() - 5)).reverse().toString(), iterated.toString());
 	}
 	
 
@@ -262,6 +319,21 @@ public class RopeTest extends TestCase {
 
 		Assert.assertEquals(r1, r3);
 		Assert.assertNotEquals(r1, r2);
+
+		// edited versions, compared across differently shaped trees
+		StringBuilder text = new StringBuilder();
+		Rope base = Rope.EMPTY;
+		for (int j=0; j<5000; ++j) {
+			base = base.append(Rope.of("line " + j + "\n"));
+			text.append("line ").append(j).append('\n');
+		}
+		final Rope edited = base.insert(30000, "x").delete(30000, 30001);
+		Assert.assertEquals(base, edited);
+		Assert.assertEquals(edited, Rope.of(text.toString()));
+		Assert.assertEquals(Rope.of(text.toString()), edited.rebalance(7));
+		Assert.assertNotEquals(base, base.delete(40000, 40001).insert(40000, "?"));
+		Assert.assertNotEquals(base, base.subSequence(0, base.length() - 1).append('!'));
+		Assert.assertNotEquals(base, "not a rope");
 	}
 
 	public void testHashCode() {
@@ -271,6 +343,32 @@ public class RopeTest extends TestCase {
 
 		Assert.assertEquals(r1.hashCode(), r3.hashCode());
 		Assert.assertNotEquals(r1.hashCode(), r2.hashCode());
+
+		// the hash code covers every character, and matches String's
+		final Rope r4 = Rope.of("abcdeXXXXz"), r5 = Rope.of("abcdeYYYYz");
+		Assert.assertNotEquals(r4.hashCode(), r5.hashCode());
+		StringBuilder text = new StringBuilder();
+		Rope r = Rope.EMPTY;
+		for (int j=0; j<3000; ++j) {
+			final String piece = j % 5 == 0 ? "\u03c0" + j : "piece " + j;
+			r = j % 2 == 0 ? r.append(Rope.of(piece)) : r.append(Rope.copyOf(new StringBuilder(piece)));
+			text.append(piece);
+		}
+		Assert.assertEquals(text.toString().hashCode(), r.hashCode());
+		Assert.assertEquals(text.toString().hashCode(), r.rebalance().hashCode());
+		Assert.assertEquals(text.substring(17, 20000).hashCode(), r.subSequence(17, 20000).hashCode());
+		Assert.assertEquals(new StringBuilder(text).reverse().toString().hashCode(), r.reverse().hashCode());
+		Assert.assertEquals(text.toString().hashCode(), r.compress().hashCode());
+		Assert.assertEquals(0, Rope.EMPTY.hashCode());
+
+		// a hash code of zero is cached, and compared by equals, like any other
+		final Rope zero = Rope.of("\0".repeat(100)).append(Rope.copyOf(new StringBuilder("\0".repeat(100))));
+		final Rope other = Rope.of("\0".repeat(199) + "x");
+		Assert.assertEquals(0, zero.hashCode());
+		Assert.assertEquals(0, zero.hashCode());
+		Assert.assertNotEquals(0, other.hashCode());
+		Assert.assertNotEquals(zero, other);
+		Assert.assertEquals(zero, Rope.of("\0".repeat(200)));
 	}
 	
 	public void testHashCode2() {
@@ -346,6 +444,22 @@ public class RopeTest extends TestCase {
 		assertTrue(r4.compareTo(r1) > 0);
 		assertTrue(r1.compareTo(s2) < 0);
 		assertEquals(0, r2.compareTo(s2));
+
+		Rope base = Rope.EMPTY;
+		StringBuilder text = new StringBuilder();
+		for (int j=0; j<5000; ++j) {
+			base = base.append(Rope.of("line " + j + "\n"));
+			text.append("line ").append(j).append('\n');
+		}
+		final Rope changed = base.delete(20000, 20001).insert(20000, "\u0000");
+		final String changedText = new StringBuilder(text).replace(20000, 20001, "\u0000").toString();
+		assertEquals(Integer.signum(changedText.compareTo(text.toString())), Integer.signum(changed.compareTo(base)));
+		assertEquals(Integer.signum(text.toString().compareTo(changedText)), Integer.signum(base.compareTo(changed)));
+		assertEquals(text.charAt(20000) - '\u0000', base.compareTo(changedText));
+		assertEquals(0, base.compareTo(text));
+		assertEquals(0, base.compareTo(base.rebalance(3)));
+		assertEquals(-1, base.subSequence(0, 1000).compareTo(base.subSequence(0, 1001)));
+		assertEquals(1, base.compareTo(text.substring(0, text.length() - 1)));
 	}
 	
 	public void testToString() {
@@ -355,6 +469,18 @@ public class RopeTest extends TestCase {
 		assertEquals(phrase.subSequence(7, 27), r1.subSequence(7, 27).toString());
 	}
 
+	public void testToStringNested() {
+		Rope r = Rope.EMPTY;
+		StringBuilder expected = new StringBuilder();
+		for (int j=0; j<50; ++j) {
+			String s = Integer.toString(j);
+			r = (j % 2 == 0) ? r.append(s) : r.insert(0, s);
+			if (j % 2 == 0) expected.append(s); else expected.insert(0, s);
+		}
+		assertEquals(expected.toString(), r.toString());
+		assertEquals(expected.reverse().toString(), r.reverse().toString());
+	}
+
 	public void testReverseIterator() {
 		FlatStringRope r1 = (FlatStringRope) Rope.of("01234");
 		ReverseRope r2 = new ReverseRope(r1);
@@ -407,13 +533,69 @@ public class RopeTest extends TestCase {
 			ObjectInputStream ois = new ObjectInputStream(in);
 			Rope r = (Rope) ois.readObject();
 			assertTrue(r instanceof FlatStringRope);
+			assertEquals("01234432100", r.toString());
 		} catch (Exception e) {
 			fail(e.toString());
 		}
 		
 		
 	}
+
+	public void testSerializeLarge() throws Exception {
+		StringBuilder text = new StringBuilder();
+		Rope r = Rope.EMPTY;
+		for (int j=0; j<20000; ++j) {
+			String piece = j % 7 == 0 ? "\u03c0\ud83d\ude00 " + j : "caf\u00e9 " + j;
+			text.append(piece);
+			r = r.append(Rope.of(piece));
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+			oos.writeObject(r);
+			oos.writeObject(Rope.EMPTY);
+		}
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+			Rope read = (Rope) ois.readObject();
+			assertEquals(text.toString(), read.toString());
+			assertHeightBalanced(read);
+			assertTrue(((Rope) ois.readObject()).isEmpty());
+		}
+	}
 	
+	public void testSerializeShared() throws Exception {
+		Rope base = Rope.EMPTY;
+		for (int j=0; j<2000; ++j)
+			base = base.append(Rope.of("paragraph " + j + " of the document\n"));
+		java.util.List<Rope> versions = new java.util.ArrayList<>();
+		versions.add(base);
+		for (int j=1; j<20; ++j)
+			versions.add(versions.get(j - 1).insert(j * 1000, "edit " + j).delete(j * 2000, j * 2000 + 7));
+		Rope tail = new ConcatenationRope(base, new ReverseRope(Rope.of("reversed")));
+		versions.add(tail);
+		versions.add(base.subSequence(100, 200));
+		versions.add(base);
+
+		ByteArrayOutputStream shared = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(shared)) {
+			Rope.writeShared(oos, versions);
+		}
+		ByteArrayOutputStream single = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(single)) {
+			oos.writeObject(base);
+		}
+		assertTrue(shared.size() < 2 * single.size());
+
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(shared.toByteArray()))) {
+			java.util.List<Rope> read = Rope.readShared(ois);
+			assertEquals(versions.size(), read.size());
+			for (int j=0; j<versions.size(); ++j)
+				assertEquals(versions.get(j).toString(), read.get(j).toString());
+			assertSame(read.get(0), read.get(read.size() - 1));
+			assertSame(read.get(0), ((ConcatenationRope) read.get(20)).getLeft());
+		}
+	}
+
 	public void testPadStart() {
 		Rope r = Rope.of("hello");
 		assertEquals("hello", r.padStart(5).toString());
@@ -459,6 +641,505 @@ public class RopeTest extends TestCase {
 		assertEquals("aboytest", r.toString());
 	}
 	
+	public void testAppendStaysBalanced() {
+		Rope appended = Rope.EMPTY, prepended = Rope.EMPTY;
+		StringBuilder expected = new StringBuilder();
+		for (int j=0; j<20000; ++j) {
+			String s = "word" + j + ' ';
+			appended = appended.append(s);
+			prepended = Rope.of(s).append(prepended);
+			expected.append(s);
+		}
+		assertEquals(expected.toString(), appended.toString());
+		// a balanced rope of length n has depth at most log_phi(n)
+		assertTrue(((AbstractRope) appended).depth() < 30);
+		assertTrue(((AbstractRope) prepended).depth() < 30);
+	}
+
+	private static void assertHeightBalanced(Rope r) {
+		if (r instanceof ConcatenationRope c) {
+			int difference = ((AbstractRope) c.getLeft()).depth() - ((AbstractRope) c.getRight()).depth();
+			assertTrue("Depth difference " + difference, Math.abs(difference) <= 1);
+			assertHeightBalanced(c.getLeft());
+			assertHeightBalanced(c.getRight());
+		}
+	}
+
+	public void testConcatenationHeightBalanced() {
+		Random random = new Random(11);
+		Rope r = Rope.EMPTY;
+		StringBuilder expected = new StringBuilder();
+		for (int j=0; j<2000; ++j) {
+			String s = "insert" + j;
+			int offset = random.nextInt(expected.length() + 1);
+			r = r.insert(offset, s);
+			expected.insert(offset, s);
+		}
+		assertEquals(expected.toString(), r.toString());
+		assertHeightBalanced(r);
+		assertHeightBalanced(r.subSequence(1000, 9000));
+	}
+
+	private static int countLeaves(Rope r) {
+		if (r instanceof ConcatenationRope c)
+			return countLeaves(c.getLeft()) + countLeaves(c.getRight());
+		return 1;
+	}
+
+	public void testRebalanceCoalescesLeaves() {
+		FlatStringRope digits = (FlatStringRope) Rope.of("0123456789".repeat(10));
+		Rope r = Rope.EMPTY;
+		StringBuilder expected = new StringBuilder();
+		for (int j=0; j<1000; ++j) {
+			Rope leaf = (j % 3 == 0) ? new SubstringRope(digits, j % 50, 5) : Rope.of(Character.toString('a' + j % 26));
+			r = new ConcatenationRope(r, leaf);
+			expected.append(leaf);
+		}
+		r = new ConcatenationRope(r, digits);
+		expected.append(digits);
+
+		Rope packed = r.rebalance(64);
+		assertEquals(expected.toString(), packed.toString());
+		assertTrue(countLeaves(packed) <= (expected.length() + 63) / 64 + 2);
+		assertEquals(countLeaves(r), countLeaves(r.rebalance()));
+		try {
+			r.rebalance(0);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+	}
+
+	public void testRebalanceLargeRope() {
+		// degenerate chains, joined so that both sides of the top nodes are large
+		Rope r = Rope.EMPTY;
+		for (int i=0; i<20; ++i) {
+			Rope chain = Rope.EMPTY;
+			for (int j=0; j<2000; ++j)
+				chain = new ConcatenationRope(chain, Rope.of("line " + j + " of a rather large rope\n"));
+			r = new ConcatenationRope(r, chain);
+		}
+		String expected = r.toString();
+		assertTrue(expected.length() > (1 << 20));
+
+		Rope balanced = r.rebalance();
+		assertEquals(expected, balanced.toString());
+		assertEquals(countLeaves(r), countLeaves(balanced));
+		assertTrue(((AbstractRope) balanced).depth() <= 17);
+
+		Rope packed = r.rebalance(4096);
+		assertEquals(expected, packed.toString());
+		assertTrue(countLeaves(packed) <= 2 * (expected.length() / 4096 + 1));
+	}
+
+	public void testLatin1Rope() {
+		byte[] bytes = "xcaf\u00e9 cr\u00e8me".getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+		Rope r = Rope.ofLatin1(bytes, 1, bytes.length - 1);
+		assertEquals("caf\u00e9 cr\u00e8me", r.toString());
+		assertEquals('\u00e9', r.charAt(3));
+		assertEquals(3, r.indexOf('\u00e9'));
+		assertEquals(-1, r.indexOf('\u03c0'));
+		assertEquals("\u00e9 c", r.subSequence(3, 6).toString());
+		assertEquals("em\u00e8rc \u00e9fac", r.reverse().toString());
+
+		Rope copied = Rope.copyOf(new StringBuilder("caf\u00e9"));
+		assertTrue(copied instanceof FlatLatin1Rope);
+		assertTrue(Rope.copyOf(new StringBuilder("\u03c0")) instanceof FlatStringRope);
+
+		// short Latin-1 leaves stay compact, and fall back to UTF-16 otherwise
+		assertTrue(copied.append(Rope.copyOf(new StringBuilder(" au lait"))) instanceof FlatLatin1Rope);
+		Rope mixed = copied.append("\u03c0");
+		assertFalse(mixed instanceof FlatLatin1Rope);
+		assertEquals("caf\u00e9\u03c0", mixed.toString());
+	}
+
+	public void testAppendInPlace() {
+		Rope base = Rope.of("abc").append("def");
+		Rope r1 = base.append("g");
+		Rope r2 = r1.append("h");
+		// appending to a rope that no longer owns the free space copies
+		Rope r3 = r1.append("x");
+		Rope r4 = base.append("yz");
+		assertEquals("abcdef", base.toString());
+		assertEquals("abcdefg", r1.toString());
+		assertEquals("abcdefgh", r2.toString());
+		assertEquals("abcdefgx", r3.toString());
+		assertEquals("abcdefyz", r4.toString());
+		assertEquals("abcd!", r2.subSequence(0, 4).append("!").toString());
+		assertEquals("abcdefgh", r2.toString());
+	}
+
+	public void testRopeBuilder() {
+		RopeBuilder builder = new RopeBuilder();
+		StringBuilder expected = new StringBuilder();
+		Rope spliced = Rope.of("spliced ".repeat(1000)).reverse();
+		for (int j=0; j<20000; ++j) {
+			builder.append("line ").append(String.valueOf(j)).append('\n');
+			expected.append("line ").append(j).append('\n');
+			if (j % 5000 == 0) {
+				builder.append(spliced).append(new StringBuilder("abc"), 1, 3).append((CharSequence) null);
+				expected.append(spliced).append("bc").append("null");
+			}
+		}
+		Rope r = builder.build();
+		assertEquals(expected.length(), builder.length());
+		assertEquals(expected.toString(), r.toString());
+		assertHeightBalanced(r);
+
+		builder.append("more");
+		assertEquals(expected + "more", builder.build().toString());
+		assertEquals(expected.toString(), r.toString());
+		assertEquals("", new RopeBuilder().build().toString());
+
+		// toString leaves the buffered characters where they are
+		builder = new RopeBuilder(64).append("0123456789");
+		assertEquals("0123456789", builder.toString());
+		assertEquals(1, builder.append("abcdef").build().charSegments().size());
+
+		// surrogate pairs are kept within one leaf
+		builder = new RopeBuilder(4);
+		String pairs = "ab\ud83d\ude00c\ud83d\ude01\ud83d\ude02d";
+		builder.append(pairs.substring(0, 3));
+		for (char c : pairs.substring(3, 8).toCharArray())
+			builder.append(c);
+		builder.append(pairs, 8, pairs.length());
+		r = builder.build();
+		assertEquals(pairs, r.toString());
+		for (java.nio.CharBuffer leaf : r.charSegments())
+			assertFalse(Character.isHighSurrogate(leaf.charAt(leaf.length() - 1)));
+	}
+
+	public void testTransientRope() {
+		Random random = new Random(7);
+		StringBuilder base = new StringBuilder();
+		for (int j=0; j<3000; ++j)
+			base.append("line ").append(j).append('\n');
+		Rope original = Rope.of(base.toString()).rebalance(256).append(Rope.of("x".repeat(5000)));
+		String originalText = original.toString();
+
+		StringBuilder expected = new StringBuilder(originalText);
+		TransientRope editor = original.toTransient();
+		for (int j=0; j<2000; ++j) {
+			int offset = random.nextInt(expected.length() + 1);
+			if (random.nextBoolean()) {
+				String text = j % 100 == 0 ? "y".repeat(2000) : "ins" + j;
+				editor.insert(offset, text);
+				expected.insert(offset, text);
+			} else {
+				int end = Math.min(expected.length(), offset + random.nextInt(50));
+				editor.delete(offset, end);
+				expected.delete(offset, end);
+			}
+		}
+		editor.append("end");
+		expected.append("end");
+		assertEquals(expected.length(), editor.length());
+		assertEquals(expected.charAt(1234), editor.charAt(1234));
+
+		Rope edited = editor.persistent();
+		assertEquals(expected.toString(), edited.toString());
+		assertEquals(originalText, original.toString());
+		assertHeightBalanced(edited);
+		try {
+			editor.append("more");
+			fail("transient rope should not be usable after persistent()");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals("", Rope.EMPTY.toTransient().append("abc").delete(0, 3).persistent().toString());
+	}
+
+	public void testApplyEdits() {
+		Rope r = Rope.of("The quick brown fox jumps over the lazy dog. ".repeat(200)).rebalance(64);
+		StringBuilder expected = new StringBuilder(r.toString());
+		java.util.List<RopeEdit> edits = new java.util.ArrayList<>();
+		Random random = new Random(3);
+		int offset = 0;
+		while (true) {
+			offset += random.nextInt(200);
+			int end = Math.min(r.length(), offset + random.nextInt(3) * random.nextInt(100));
+			if (offset > r.length())
+				break;
+			edits.add(new RopeEdit(offset, end - offset, random.nextBoolean() ? "<" + edits.size() + ">" : ""));
+			offset = end;
+		}
+		edits.add(RopeEdit.insert(r.length(), "!"));
+		for (int j=edits.size()-1; j>=0; --j) {
+			RopeEdit edit = edits.get(j);
+			expected.replace(edit.offset(), edit.offset() + edit.deleteLength(), edit.insertText().toString());
+		}
+		Rope edited = r.applyEdits(edits);
+		assertEquals(expected.toString(), edited.toString());
+		assertHeightBalanced(edited);
+
+		assertEquals("XbcY", Rope.of("abc").applyEdits(java.util.List.of(RopeEdit.replace(0, 1, "X"), RopeEdit.insert(3, "Y"))).toString());
+		assertEquals("", r.applyEdits(java.util.List.of(RopeEdit.delete(0, r.length()))).toString());
+		assertSame(r, r.applyEdits(java.util.List.of()));
+		try {
+			r.applyEdits(java.util.List.of(RopeEdit.delete(5, 10), RopeEdit.insert(7, "x")));
+			fail("overlapping edits should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testRead() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int j=0; j<20000; ++j)
+			text.append("line ").append(j).append(" \u00e9\u03c0\ud83d\ude00\n");
+		String expected = text.toString();
+
+		Rope fromReader = Rope.read(new java.io.StringReader(expected));
+		assertEquals(expected, fromReader.toString());
+		assertHeightBalanced(fromReader);
+
+		byte[] bytes = expected.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+		Rope fromChannel = Rope.read(java.nio.channels.Channels.newChannel(new ByteArrayInputStream(bytes)),
+				java.nio.charset.StandardCharsets.UTF_8);
+		assertEquals(expected, fromChannel.toString());
+		assertHeightBalanced(fromChannel);
+
+		Rope small = new RopeBuilder(64).readFrom(new java.io.StringReader(expected)).build();
+		assertEquals(expected, small.toString());
+		// leaves are full but for surrogate pairs carried over to the next
+		for (java.nio.CharBuffer leaf : small.charSegments().subList(0, countLeaves(small) - 1)) {
+			assertTrue(leaf.length() == 64 || leaf.length() == 63);
+			assertFalse(Character.isHighSurrogate(leaf.charAt(leaf.length() - 1)));
+		}
+	}
+
+	public void testReader() throws IOException {
+		Rope r = Rope.EMPTY;
+		StringBuilder expected = new StringBuilder();
+		for (int j=0; j<500; ++j) {
+			String piece = "leaf " + j + ";";
+			r = r.append(Rope.of(piece));
+			expected.append(piece);
+		}
+
+		RopeReader in = r.reader();
+		StringBuilder read = new StringBuilder();
+		char[] buffer = new char[37];
+		int n;
+		while ((n = in.read(buffer, 3, 30)) != -1)
+			read.append(buffer, 3, n);
+		assertEquals(expected.toString(), read.toString());
+		assertEquals(-1, in.read());
+
+		in = r.reader();
+		assertEquals(1000, in.skip(1000));
+		assertEquals(expected.charAt(1000), in.read());
+		in.mark(0);
+		assertEquals(expected.substring(1001, 1011), readFully(in, 10));
+		in.reset();
+		assertEquals(expected.substring(1001, 1011), readFully(in, 10));
+		assertEquals(expected.length() - 1011, in.skip(Long.MAX_VALUE));
+		assertEquals(-1, in.read(buffer, 0, buffer.length));
+
+		in = r.reader();
+		read.setLength(0);
+		java.nio.CharBuffer chunk;
+		while ((chunk = in.readChunk(4)) != null) {
+			assertTrue(chunk.length() <= 4);
+			assertTrue(chunk.isReadOnly());
+			read.append(chunk);
+		}
+		assertEquals(expected.toString(), read.toString());
+
+		in = r.reader();
+		in.skip(500);
+		StringWriter out = new StringWriter();
+		assertEquals(expected.length() - 500, in.transferTo(out));
+		assertEquals(expected.substring(500), out.toString());
+
+		in.close();
+		try {
+			in.read();
+			fail("a closed reader should not be readable");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private static String readFully(java.io.Reader in, int length) throws IOException {
+		char[] buffer = new char[length];
+		int offset = 0;
+		while (offset < length)
+			offset += in.read(buffer, offset, length - offset);
+		return new String(buffer);
+	}
+
+	public void testEncode() throws IOException {
+		Rope r = Rope.EMPTY;
+		StringBuilder expected = new StringBuilder();
+		for (int j=0; j<3000; ++j) {
+			String piece = j % 3 == 0 ? "caf\u00e9 " + j : j % 3 == 1 ? "plain " + j : "\u03c0\ud83d\ude00" + j;
+			r = r.append(j % 2 == 0 ? Rope.copyOf(new StringBuilder(piece)) : Rope.of(piece));
+			expected.append(piece);
+		}
+		r = r.subSequence(3, r.length() - 3);
+		String text = expected.substring(3, expected.length() - 3);
+
+		for (java.nio.charset.Charset charset : new java.nio.charset.Charset[] {
+				java.nio.charset.StandardCharsets.UTF_8, java.nio.charset.StandardCharsets.ISO_8859_1,
+				java.nio.charset.StandardCharsets.US_ASCII, java.nio.charset.StandardCharsets.UTF_16 }) {
+			byte[] encoded = text.getBytes(charset);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			r.write(out, charset);
+			Assert.assertArrayEquals(encoded, out.toByteArray());
+
+			out.reset();
+			r.write(java.nio.channels.Channels.newChannel(out), charset);
+			Assert.assertArrayEquals(encoded, out.toByteArray());
+		}
+	}
+
+	public void testSegments() throws IOException {
+		Rope r = Rope.EMPTY;
+		StringBuilder expected = new StringBuilder();
+		for (int j=0; j<200; ++j) {
+			String piece = j % 3 == 0 ? "caf\u00e9 " + j : j % 3 == 1 ? "plain text " + j : "\u03c0\ud83d" + j;
+			r = r.append(j % 2 == 0 ? Rope.copyOf(new StringBuilder(piece)) : Rope.of(piece));
+			expected.append(piece);
+		}
+		r = r.subSequence(5, r.length() - 5).rebalance();
+		String text = expected.substring(5, expected.length() - 5);
+
+		java.util.List<java.nio.CharBuffer> chars = r.charSegments();
+		assertEquals(countLeaves(r), chars.size());
+		StringBuilder joined = new StringBuilder();
+		for (java.nio.CharBuffer segment : chars) {
+			assertTrue(segment.isReadOnly());
+			joined.append(segment);
+		}
+		assertEquals(text, joined.toString());
+
+		for (java.nio.charset.Charset charset : new java.nio.charset.Charset[] {
+				java.nio.charset.StandardCharsets.UTF_8, java.nio.charset.StandardCharsets.ISO_8859_1 }) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			java.nio.channels.WritableByteChannel channel = java.nio.channels.Channels.newChannel(out);
+			for (java.nio.ByteBuffer segment : r.byteSegments(charset)) {
+				assertTrue(segment.isReadOnly());
+				channel.write(segment);
+			}
+			Assert.assertArrayEquals(text.getBytes(charset), out.toByteArray());
+		}
+	}
+
+	public void testCompress() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int j=0; j<20000; ++j)
+			text.append("line ").append(j % 100).append(j % 11 == 0 ? " \u03c0\n" : " text\n");
+		Random random = new Random(7);
+		for (int j=0; j<5000; ++j)
+			text.append((char) random.nextInt(0x3000));
+		String expected = text.toString();
+		Rope r = Rope.read(new java.io.StringReader(expected)).insert(100, "inserted");
+		expected = expected.substring(0, 100) + "inserted" + expected.substring(100);
+
+		Rope compressed = r.compress();
+		assertEquals(expected, compressed.toString());
+		assertEquals(r, compressed);
+		assertEquals(r.hashCode(), compressed.hashCode());
+		int compressedLeaves = 0, leaves = compressed.charSegments().size();
+		java.util.ArrayDeque<Rope> stack = new java.util.ArrayDeque<>();
+		stack.push(compressed);
+		while (!stack.isEmpty()) {
+			Rope node = stack.pop();
+			if (node instanceof ConcatenationRope c) {
+				stack.push(c.getLeft());
+				stack.push(c.getRight());
+			} else if (node instanceof SubstringRope s) {
+				stack.push(s.getRope());
+			} else if (node instanceof FlatCompressedRope) {
+				++compressedLeaves;
+			}
+		}
+		assertTrue(compressedLeaves > 0 && compressedLeaves < leaves);
+		assertSame(compressed, compressed.compress());
+
+		for (int j=0; j<200; ++j) {
+			int index = random.nextInt(expected.length());
+			assertEquals(expected.charAt(index), compressed.charAt(index));
+		}
+		assertEquals(expected.substring(5000, 90000), compressed.subSequence(5000, 90000).toString());
+		assertEquals(expected.indexOf('\u03c0', 3000), compressed.indexOf('\u03c0', 3000));
+		assertEquals(new StringBuilder(expected).reverse().toString(), compressed.reverse().toString());
+		StringWriter out = new StringWriter();
+		compressed.write(out, 10, 50000);
+		assertEquals(expected.substring(10, 50010), out.toString());
+
+		// a long leaf is compressed as blocks, each inflated on its own
+		String long_ = expected.substring(0, 200000);
+		Rope blocks = Rope.of(long_).compress();
+		assertTrue(blocks instanceof ConcatenationRope);
+		StringBuilder segments = new StringBuilder();
+		for (java.nio.CharBuffer block : blocks.charSegments()) {
+			assertTrue(block.length() <= 1 << 14);
+			segments.append(block);
+		}
+		assertEquals(long_, segments.toString());
+		assertEquals(long_, blocks.toString());
+		for (int j=0; j<200; ++j) {
+			int index = random.nextInt(long_.length());
+			assertEquals(long_.charAt(index), blocks.charAt(index));
+		}
+		Rope substring = Rope.of(long_).subSequence(1000, 150000);
+		assertEquals(long_.substring(1000, 150000), substring.compress().toString());
+	}
+
+	public void testMap() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int j=0; j<5000; ++j)
+			text.append("line ").append(j).append(" caf\u00e9\n");
+		String expected = text.toString();
+
+		java.nio.file.Path latin1 = java.nio.file.Files.createTempFile("rope", ".txt");
+		java.nio.file.Path utf16 = java.nio.file.Files.createTempFile("rope", ".txt");
+		java.nio.file.Path ascii = java.nio.file.Files.createTempFile("rope", ".txt");
+		try {
+			java.nio.file.Files.writeString(latin1, expected, java.nio.charset.StandardCharsets.ISO_8859_1);
+			java.nio.file.Files.writeString(utf16, expected + "\u03c0", java.nio.charset.StandardCharsets.UTF_16);
+
+			Rope r = Rope.map(latin1, java.nio.charset.StandardCharsets.ISO_8859_1);
+			assertEquals(expected, r.toString());
+			assertEquals('\u00e9', r.charAt(r.indexOf('\u00e9')));
+			Rope edited = r.delete(5, 100).insert(1000, "\u03c0");
+			assertEquals(new StringBuilder(expected).delete(5, 100).insert(1000, "\u03c0").toString(), edited.toString());
+			StringWriter out = new StringWriter();
+			r.subSequence(10, 20000).write(out);
+			assertEquals(expected.substring(10, 20000), out.toString());
+
+			// bytes outside ASCII read as replacement characters
+			String decoded = new String(expected.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1),
+					java.nio.charset.StandardCharsets.US_ASCII);
+			Rope ra = Rope.map(latin1, java.nio.charset.StandardCharsets.US_ASCII);
+			assertEquals(decoded, ra.toString());
+			assertEquals('\ufffd', ra.charAt(expected.indexOf('\u00e9')));
+			assertEquals(decoded.indexOf('\ufffd', 500), ra.indexOf('\ufffd', 500));
+			assertEquals(-1, ra.indexOf('\u00e9'));
+			java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+			ra.write(bytes, java.nio.charset.StandardCharsets.ISO_8859_1);
+			assertEquals(decoded.replace('\ufffd', '?'), bytes.toString(java.nio.charset.StandardCharsets.ISO_8859_1));
+			java.nio.file.Files.writeString(ascii, "plain ascii", java.nio.charset.StandardCharsets.US_ASCII);
+			assertEquals("plain ascii", Rope.map(ascii, java.nio.charset.StandardCharsets.US_ASCII).toString());
+
+			Rope r16 = Rope.map(utf16, java.nio.charset.StandardCharsets.UTF_16);
+			assertEquals(expected + "\u03c0", r16.toString());
+			assertEquals(expected.substring(100, 5000), r16.subSequence(100, 5000).toString());
+		} finally {
+			java.nio.file.Files.deleteIfExists(latin1);
+			java.nio.file.Files.deleteIfExists(utf16);
+			java.nio.file.Files.deleteIfExists(ascii);
+		}
+		try {
+			Rope.map(latin1, java.nio.charset.StandardCharsets.UTF_8);
+			fail("variable-width charsets should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
 	public void testEmpty() {
 		Rope r1 = Rope.EMPTY;
 		Rope r2 = Rope.of("012345");
@@ -496,6 +1177,38 @@ public class RopeTest extends TestCase {
 		assertEquals('9', r4.charAt(10));
 	}
 	
+	public void testGetChars() {
+		FlatStringRope r1 = (FlatStringRope) Rope.of("0123456789");
+		Rope r2 = Rope.viewOf(new StringBuilder("abcdef"));
+		SubstringRope r3 = new SubstringRope(r1, 3, 5);
+		ReverseRope r4 = new ReverseRope(new ConcatenationRope(r1, r2));
+		Rope r5 = new ConcatenationRope(new ConcatenationRope(r3, r4), r2);
+		for (Rope r: new Rope[] {r1, r2, r3, r4, r5}) {
+			String expected = r.toString();
+			for (int start=0; start<=r.length(); ++start) {
+				for (int end=start; end<=r.length(); ++end) {
+					char[] actual = new char[end - start + 2];
+					r.getChars(start, end, actual, 1);
+					assertEquals(expected.substring(start, end), new String(actual, 1, end - start));
+				}
+			}
+		}
+		try {
+			r5.getChars(0, r5.length() + 1, new char[r5.length() + 1], 0);
+			fail("Expected IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// success
+		}
+		char[] small = new char[r5.length() - 1];
+		try {
+			r5.getChars(0, r5.length(), small, 0);
+			fail("Expected IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// the destination is checked before anything is copied
+			assertEquals(new String(new char[small.length]), new String(small));
+		}
+	}
+
 	public void testRegexp() {
 		ConcatenationRope r = new ConcatenationRope(Rope.of("012345"), Rope.of("6789"));
 		CharSequence c = r.getForSequentialAccess();
@@ -510,6 +1223,35 @@ public class RopeTest extends TestCase {
 		}
 	}
 
+	public void testRegexpBacktracking() {
+		Rope r = Rope.EMPTY;
+		for (int j=0; j<200; ++j)
+			r = new ConcatenationRope(r, Rope.of(j + ","));
+		String expected = r.toString();
+		CharSequence c = ((ConcatenationRope) r).getForSequentialAccess();
+		Random random = new Random(7);
+		int index = 0;
+		for (int j=0; j<5000; ++j) {
+			index = Math.floorMod(index + random.nextInt(41) - 20, expected.length());
+			assertEquals("Index: " + index, expected.charAt(index), c.charAt(index));
+		}
+		assertTrue(r.matches("(\\d+,)*199,"));
+	}
+
+	public void testIndexOfAcrossLeaves() {
+		Rope r = Rope.EMPTY;
+		for (int j=0; j<100; ++j)
+			r = new ConcatenationRope(r, Rope.of("ab" + j));
+		String expected = r.toString();
+		for (String needle: new String[] {"ab1", "b99", "9ab", "ab50ab51", "ab100"}) {
+			assertEquals(needle, expected.indexOf(needle), r.indexOf(needle));
+			assertEquals(needle, expected.indexOf(needle, 40), r.indexOf(needle, 40));
+		}
+		Matcher m = r.matcher(Pattern.compile("b(\\d)\\1a"));
+		assertTrue(m.find());
+		assertEquals(expected.indexOf("b11a"), m.start());
+	}
+
 	public void testStartsEndsWith() {
 		final Rope r = Rope.of("Hello sir, how do you do?");
 		assertTrue(r.startsWith(""));